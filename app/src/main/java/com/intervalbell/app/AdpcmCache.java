@@ -0,0 +1,22 @@
+package com.intervalbell.app;
+
+import android.util.LruCache;
+
+/**
+ * Size-bounded LRU cache of {@link ImaAdpcm} clips, keyed by sound id.
+ * The compressed counterpart of {@link PcmCache}, sized by encoded bytes.
+ */
+public class AdpcmCache extends LruCache<String, ImaAdpcm.Clip> {
+
+    /**
+     * @param maxBytes Upper bound on the total size of cached clips
+     */
+    public AdpcmCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(String key, ImaAdpcm.Clip clip) {
+        return clip.getSizeInBytes();
+    }
+}
@@ -0,0 +1,408 @@
+package com.intervalbell.app;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The single audio thread of the app. It owns the output track and the
+ * {@link AudioMixer}, runs commands posted from other threads in order, and
+ * advances background jobs (renders ahead of the playhead, preloads) one step
+ * between mix blocks. A {@link BellSequencer} can ring bells on a grid of
+ * output frames, with the track kept playing in between.
+ *
+ * Other threads only touch the command queue under {@link #lock}; everything
+ * else is confined to the engine thread, so playback state needs no locking
+ * and at most one audio thread exists at a time.
+ */
+public class AudioEngine {
+    private static final String TAG = "AudioEngine";
+
+    private static final int SAMPLE_RATE = ToneSynthesizer.SAMPLE_RATE;
+    private static final int BLOCK_FRAMES = AudioMixer.BLOCK_FRAMES;
+
+    // Pause the track after this much silence; it is resumed by the next voice
+    private static final long IDLE_TIMEOUT_MS = 3000;
+
+    // Give up measuring an onset the track reports no timestamp for within this many frames
+    private static final int ONSET_TIMEOUT_FRAMES = SAMPLE_RATE;
+
+    // Pause after a pass in which every job was waiting, about one block
+    private static final long WAITING_PASS_MS = BLOCK_FRAMES * 1000L / SAMPLE_RATE;
+
+    /**
+     * Incremental background work run on the engine thread.
+     */
+    public interface Job {
+        /**
+         * Does a bounded amount of work; must not block.
+         * @return Whether the job is finished, did some work, or is waiting
+         */
+        Step step();
+    }
+
+    /**
+     * Outcome of one step of a {@link Job}.
+     */
+    public enum Step {
+        DONE,
+        WORKED,
+        // Nothing to do until something else happens, e.g. another job finishes
+        WAITING
+    }
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Runnable> commands = new ArrayDeque<>();
+    private boolean running = false;
+    private boolean released = false;
+
+    // Engine thread only
+    private final AudioMixer mixer = new AudioMixer();
+    private final BellSequencer sequencer = new BellSequencer();
+    private final List<Job> jobs = new ArrayList<>();
+    private final List<Runnable> batch = new ArrayList<>();
+    private final short[] outBuffer = new short[BLOCK_FRAMES];
+    private final AudioTimestamp timestamp = new AudioTimestamp();
+
+    // Keep the track playing, silent if need be, until this System.nanoTime()
+    private long armedUntilNanos;
+
+    // Deadline of the next expected onset, and the track frame its voice started at
+    private long onsetDeadlineNanos;
+    private long onsetFrame = -1;
+    private long framesWritten;
+
+    private final OutputTap tap = new OutputTap();
+
+    /**
+     * Queues a command for the engine thread. Returns immediately.
+     */
+    public void post(Runnable command) {
+        synchronized (lock) {
+            if (released) {
+                return;
+            }
+            commands.add(command);
+            if (!running) {
+                running = true;
+                new Thread(this::runEngine, "AudioEngine").start();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues playback of already rendered samples.
+     */
+    public void play(short[] samples, float gain) {
+        post(() -> mixer.play(samples, gain));
+    }
+
+    /**
+     * Queues playback of a compressed clip, decoded block by block as it plays.
+     */
+    public void play(ImaAdpcm.Clip clip, float gain) {
+        post(() -> mixer.play(clip, gain));
+    }
+
+    /**
+     * Queues a fade-out of everything that is playing.
+     */
+    public void stopAll() {
+        post(mixer::stopAll);
+    }
+
+    /**
+     * Keeps the output track created and playing for a while, writing silence
+     * when nothing plays, so that a voice started in that time is heard after
+     * the output latency alone. Call a few seconds ahead of a known deadline.
+     * @param holdMs How long to keep the track primed; 0 releases it
+     */
+    public void arm(long holdMs) {
+        post(() -> armedUntilNanos = System.nanoTime() + holdMs * 1000000L);
+    }
+
+    /**
+     * Starts ringing on a grid of output frames, with the track playing
+     * continuously until {@link #stopSequence}. The sound is set on the
+     * sequencer by a following command or job; see {@link #getSequencer}.
+     * @param intervalMs Time between bells
+     * @param firstBellMs Time from when the command runs to the first bell
+     */
+    public void startSequence(long intervalMs, long firstBellMs) {
+        post(() -> sequencer.start(intervalMs, firstBellMs));
+    }
+
+    /**
+     * Stops the grid. Bells already ringing play out.
+     */
+    public void stopSequence() {
+        post(sequencer::stop);
+    }
+
+    /**
+     * Measures how late the next sound is heard relative to its deadline. The
+     * next voice started after this command is tagged, and the frame its
+     * first sample is mixed at is taken as the onset, even while an earlier
+     * bell is still ringing. Its presentation time comes from the track
+     * timestamp; the absolute error is recorded as
+     * {@link PipelineStats.Metric#ONSET_ERROR_US}, and an early onset also as
+     * {@link PipelineStats.Metric#ONSET_EARLY_US}.
+     * Post before the voice.
+     * @param deadlineNanos When the sound was due, in {@link System#nanoTime()}
+     */
+    public void expectOnset(long deadlineNanos) {
+        post(() -> {
+            onsetDeadlineNanos = deadlineNanos;
+            onsetFrame = -1;
+            mixer.tagNextVoice();
+        });
+    }
+
+    /**
+     * Gets the mixer. Engine thread only, i.e. from posted commands and jobs.
+     */
+    public AudioMixer getMixer() {
+        return mixer;
+    }
+
+    /**
+     * Gets the sequencer. Engine thread only.
+     */
+    BellSequencer getSequencer() {
+        return sequencer;
+    }
+
+    /**
+     * Gets the tap that mirrors the mixed output for visualizers. Any thread.
+     */
+    public OutputTap getTap() {
+        return tap;
+    }
+
+    /**
+     * Adds a background job. Engine thread only.
+     */
+    public void schedule(Job job) {
+        jobs.add(job);
+    }
+
+    /**
+     * Stops the engine thread, which drops pending work and releases the track.
+     */
+    public void release() {
+        synchronized (lock) {
+            released = true;
+            running = false;
+            commands.clear();
+            lock.notifyAll();
+        }
+    }
+
+    private void runEngine() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        AudioTrack track = null;
+        boolean trackPlaying = false;
+        // Monotonic, so wall-clock changes neither park the track nor keep it playing
+        boolean idle = false;
+        long idleSinceNanos = 0;
+        boolean jobsWaiting = false;
+        try {
+            while (true) {
+                synchronized (lock) {
+                    // Sleep only when there is nothing to run, render or play; jobs
+                    // that are all waiting are polled once a block, not in a busy loop
+                    boolean slept = false;
+                    while (running && commands.isEmpty() && (jobs.isEmpty() || jobsWaiting)
+                            && !trackPlaying && !mixer.hasActiveVoice()) {
+                        if (jobs.isEmpty()) {
+                            lock.wait();
+                        } else {
+                            lock.wait(WAITING_PASS_MS);
+                            jobsWaiting = false;
+                        }
+                        slept = true;
+                    }
+                    if (slept) {
+                        SessionStats.wakeup(SessionStats.Wakeup.ENGINE);
+                    }
+                    if (!running) {
+                        break;
+                    }
+                    batch.addAll(commands);
+                    commands.clear();
+                }
+                for (Runnable command : batch) {
+                    command.run();
+                }
+                batch.clear();
+
+                jobsWaiting = !stepJobs();
+
+                boolean armed = armedUntilNanos - System.nanoTime() > 0 || sequencer.isRunning();
+                if (!trackPlaying && !mixer.hasActiveVoice() && !armed) {
+                    // Only background work left: keep going, paced only if it is all waiting
+                    continue;
+                }
+                if (track == null) {
+                    track = createTrack();
+                    framesWritten = 0;
+                }
+                if (!trackPlaying) {
+                    track.play();
+                    trackPlaying = true;
+                    idle = false;
+                }
+
+                sequencer.mixInto(mixer, framesWritten);
+                boolean audible = mixer.mixBlock(outBuffer);
+                int onsetStart = mixer.takeTaggedStart();
+                if (onsetStart >= 0 && onsetDeadlineNanos != 0) {
+                    onsetFrame = framesWritten + onsetStart;
+                } else if (onsetFrame < 0 && onsetDeadlineNanos != 0
+                        && System.nanoTime() - onsetDeadlineNanos > ONSET_TIMEOUT_FRAMES * 1000000000L / SAMPLE_RATE) {
+                    // The sound was never started, e.g. it failed to load
+                    onsetDeadlineNanos = 0;
+                    mixer.clearTag();
+                }
+                if (audible) {
+                    idle = false;
+                    tap.write(outBuffer, BLOCK_FRAMES);
+                } else {
+                    long now = System.nanoTime();
+                    if (!idle || armed) {
+                        idle = true;
+                        idleSinceNanos = now;
+                    } else if (now - idleSinceNanos >= IDLE_TIMEOUT_MS * 1000000L) {
+                        // Nothing to play for a while: park the track until the next voice
+                        track.pause();
+                        trackPlaying = false;
+                        continue;
+                    }
+                }
+
+                PipelineStats.begin(PipelineStats.SECTION_WRITE);
+                long writeStart = PipelineStats.isEnabled() ? System.nanoTime() : 0;
+                track.write(outBuffer, 0, BLOCK_FRAMES);
+                if (writeStart != 0) {
+                    PipelineStats.record(PipelineStats.Metric.WRITE_US, (System.nanoTime() - writeStart) / 1000);
+                }
+                PipelineStats.end();
+                framesWritten += BLOCK_FRAMES;
+
+                if (onsetFrame >= 0) {
+                    measureOnset(track);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Audio engine stopped", e);
+        } finally {
+            mixer.clear();
+            sequencer.stop();
+            jobs.clear();
+            if (track != null) {
+                try {
+                    track.stop();
+                } catch (IllegalStateException e) {
+                    // Ignore cleanup errors
+                }
+                track.release();
+            }
+            synchronized (lock) {
+                running = false;
+                // A command posted while shutting down after an error restarts the thread
+                if (!released && !commands.isEmpty()) {
+                    running = true;
+                    new Thread(this::runEngine, "AudioEngine").start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds when the onset frame is presented, once the playhead has passed
+     * it, by extrapolating from the latest track timestamp.
+     */
+    private void measureOnset(AudioTrack track) {
+        if (track.getTimestamp(timestamp) && timestamp.framePosition >= onsetFrame) {
+            long presentedNanos = timestamp.nanoTime
+                - (timestamp.framePosition - onsetFrame) * 1000000000L / SAMPLE_RATE;
+            long errorUs = (presentedNanos - onsetDeadlineNanos) / 1000;
+            PipelineStats.record(PipelineStats.Metric.ONSET_ERROR_US, Math.abs(errorUs));
+            if (errorUs < 0) {
+                // Ahead of the deadline, e.g. from a pre-armed voice; the histogram holds no negatives
+                PipelineStats.record(PipelineStats.Metric.ONSET_EARLY_US, -errorUs);
+                Log.d(TAG, "Onset " + -errorUs / 1000.0 + " ms before its deadline");
+            } else {
+                Log.d(TAG, "Onset " + errorUs / 1000.0 + " ms after its deadline");
+            }
+        } else if (framesWritten - onsetFrame < ONSET_TIMEOUT_FRAMES) {
+            return;
+        }
+        onsetDeadlineNanos = 0;
+        onsetFrame = -1;
+    }
+
+    /**
+     * Advances every job by one step. Jobs may schedule new jobs.
+     * @return false if every job that ran was waiting
+     */
+    private boolean stepJobs() {
+        int count = jobs.size();
+        int kept = 0;
+        boolean progressed = count == 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            // Jobs added during this pass are kept for the next one
+            Step step = i < count ? job.step() : Step.WORKED;
+            if (step != Step.DONE) {
+                jobs.set(kept++, job);
+            }
+            if (step != Step.WAITING) {
+                progressed = true;
+            }
+        }
+        while (jobs.size() > kept) {
+            jobs.remove(jobs.size() - 1);
+        }
+        return progressed;
+    }
+
+    private AudioTrack createTrack() {
+        PipelineStats.begin(PipelineStats.SECTION_CREATE_TRACK);
+        try {
+            int minBuffer = AudioTrack.getMinBufferSize(
+                SAMPLE_RATE,
+                AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT
+            );
+
+            AudioTrack track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                    .setSampleRate(SAMPLE_RATE)
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                    .build())
+                .setBufferSizeInBytes(Math.max(minBuffer, BLOCK_FRAMES * 2 * 4))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+            PipelineStats.count(PipelineStats.Counter.TRACK_CREATIONS);
+            return track;
+        } finally {
+            PipelineStats.end();
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.intervalbell.app;
+
+import java.util.Arrays;
+
+/**
+ * Software mixer for the voices of the {@link AudioEngine}.
+ * Bells are started as voices that read from already rendered PCM, so a new
+ * bell never cuts off one that is still ringing. Voices over budget are stolen
+ * with a short fade instead of a hard cut, and stopping fades out as well.
+ * A voice can also follow a {@link ToneRender} that is still in progress; it
+ * then plays up to the rendered position and waits silently if it catches up.
+ * Voices for {@link ImaAdpcm} clips decode one block at a time as they play,
+ * so compressed tones are never expanded in full.
+ * A voice can start a given number of frames into the mix, so that its first
+ * sample lands on an exact frame rather than on a block boundary.
+ * The next voice started can be tagged, to find where its own first sample
+ * is mixed regardless of other voices that are still ringing.
+ *
+ * Only the engine thread uses a mixer, so it needs no locking. The mix loop
+ * works on preallocated buffers and never allocates.
+ */
+public class AudioMixer {
+    static final int BLOCK_FRAMES = 256;
+
+    // Sounding voices allowed at once; extra slots let stolen voices fade out
+    private static final int VOICE_BUDGET = 6;
+    private static final int VOICE_SLOTS = VOICE_BUDGET + 2;
+
+    // Fade length for voice starts, steals and stops (~5ms)
+    private static final int FADE_FRAMES = ToneSynthesizer.SAMPLE_RATE / 200;
+
+    /**
+     * One playing sound.
+     */
+    private static final class Voice {
+        short[] samples;
+        ToneRender render;
+        ImaAdpcm.Clip clip;
+        int length;
+        int position;
+        // Frames of silence before the first sample
+        int delay;
+        float gain;
+        float envelope;
+        float envelopeStep;
+        boolean active;
+        boolean releasing;
+        boolean tagged;
+        long startOrder;
+
+        // Decoded block of a compressed clip, covering [decodedStart, decodedEnd)
+        final short[] decoded = new short[ImaAdpcm.BLOCK_SAMPLES];
+        int decodedStart;
+        int decodedEnd;
+    }
+
+    private final Voice[] voices = new Voice[VOICE_SLOTS];
+    private final float[] mixBuffer = new float[BLOCK_FRAMES];
+
+    private long voiceCounter = 0;
+
+    // Tag the next voice started; offset in the last block where a tagged voice started, or -1
+    private boolean tagNext;
+    private int taggedStart = -1;
+
+    public AudioMixer() {
+        for (int i = 0; i < VOICE_SLOTS; i++) {
+            voices[i] = new Voice();
+        }
+    }
+
+    /**
+     * Starts a new voice for the given samples.
+     * @param samples 16-bit mono PCM at {@link ToneSynthesizer#SAMPLE_RATE}; must not be modified afterwards
+     * @param gain Linear gain for this voice
+     */
+    public void play(short[] samples, float gain) {
+        if (samples == null || samples.length == 0) {
+            return;
+        }
+        startVoice(samples, null, null, samples.length, gain, 0);
+    }
+
+    /**
+     * Starts a new voice whose first sample is mixed a number of frames into
+     * the mix, counted from the start of the next block.
+     * @param samples 16-bit mono PCM at {@link ToneSynthesizer#SAMPLE_RATE}; must not be modified afterwards
+     * @param gain Linear gain for this voice
+     * @param delayFrames Frames from the start of the next block to the first sample
+     */
+    public void play(short[] samples, float gain, int delayFrames) {
+        if (samples == null || samples.length == 0) {
+            return;
+        }
+        startVoice(samples, null, null, samples.length, gain, delayFrames);
+    }
+
+    /**
+     * Starts a new voice that plays a render while it is still being filled.
+     * The render should already have its first block ready.
+     * @param render Render in progress; cancelling it ends the voice once it catches up
+     * @param gain Linear gain for this voice
+     */
+    public void play(ToneRender render, float gain) {
+        if (render == null || render.getSamples().length == 0) {
+            return;
+        }
+        play(render, gain, 0);
+    }
+
+    /**
+     * Starts a new voice that plays a render while it is still being filled,
+     * from a number of frames into the mix.
+     * @param render Render in progress; cancelling it ends the voice once it catches up
+     * @param gain Linear gain for this voice
+     * @param delayFrames Frames from the start of the next block to the first sample
+     */
+    public void play(ToneRender render, float gain, int delayFrames) {
+        if (render == null || render.getSamples().length == 0) {
+            return;
+        }
+        startVoice(render.getSamples(), render, null, render.getSamples().length, gain, delayFrames);
+    }
+
+    /**
+     * Starts a new voice that decodes a compressed clip while it plays.
+     * @param clip IMA-ADPCM encoded 16-bit mono PCM
+     * @param gain Linear gain for this voice
+     */
+    public void play(ImaAdpcm.Clip clip, float gain) {
+        play(clip, gain, 0);
+    }
+
+    /**
+     * Starts a new voice that decodes a compressed clip while it plays, from
+     * a number of frames into the mix.
+     * @param clip IMA-ADPCM encoded 16-bit mono PCM
+     * @param gain Linear gain for this voice
+     * @param delayFrames Frames from the start of the next block to the first sample
+     */
+    public void play(ImaAdpcm.Clip clip, float gain, int delayFrames) {
+        if (clip == null || clip.getLength() == 0) {
+            return;
+        }
+        startVoice(null, null, clip, clip.getLength(), gain, delayFrames);
+    }
+
+    private void startVoice(short[] samples, ToneRender render, ImaAdpcm.Clip clip, int length, float gain,
+            int delay) {
+        PipelineStats.begin(PipelineStats.SECTION_PLAY);
+        int sounding = 0;
+        Voice oldest = null;
+        for (Voice voice : voices) {
+            if (voice.active && !voice.releasing) {
+                sounding++;
+                if (oldest == null || voice.startOrder < oldest.startOrder) {
+                    oldest = voice;
+                }
+            }
+        }
+        if (sounding >= VOICE_BUDGET && oldest != null) {
+            release(oldest);
+        }
+
+        Voice voice = findFreeVoice();
+        voice.samples = samples;
+        voice.render = render;
+        voice.clip = clip;
+        voice.length = length;
+        voice.decodedStart = 0;
+        voice.decodedEnd = 0;
+        voice.position = 0;
+        voice.delay = Math.max(0, delay);
+        voice.gain = gain;
+        voice.envelope = 0f;
+        voice.envelopeStep = 1f / FADE_FRAMES;
+        voice.active = true;
+        voice.releasing = false;
+        voice.tagged = tagNext;
+        tagNext = false;
+        voice.startOrder = voiceCounter++;
+        PipelineStats.end();
+    }
+
+    /**
+     * Fades out all playing voices.
+     */
+    public void stopAll() {
+        for (Voice voice : voices) {
+            if (voice.active) {
+                release(voice);
+            }
+        }
+    }
+
+    /**
+     * Drops all voices at once, without fading.
+     */
+    public void clear() {
+        for (Voice voice : voices) {
+            deactivate(voice);
+        }
+    }
+
+    public boolean hasActiveVoice() {
+        for (Voice voice : voices) {
+            if (voice.active) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tags the next voice started, so that {@link #takeTaggedStart} reports
+     * the block offset of its first mixed sample.
+     */
+    public void tagNextVoice() {
+        tagNext = true;
+    }
+
+    /**
+     * Drops a tag that no voice has taken yet.
+     */
+    public void clearTag() {
+        tagNext = false;
+    }
+
+    /**
+     * Gets where the tagged voice started sounding in the last mixed block, once.
+     * @return Frame offset within the block, or -1 if it did not start in it
+     */
+    public int takeTaggedStart() {
+        int start = taggedStart;
+        taggedStart = -1;
+        return start;
+    }
+
+    private Voice findFreeVoice() {
+        Voice quietest = voices[0];
+        for (Voice voice : voices) {
+            if (!voice.active) {
+                return voice;
+            }
+            if (voice.releasing && (!quietest.releasing || voice.envelope < quietest.envelope)) {
+                quietest = voice;
+            }
+        }
+        // Every slot is busy: reuse the quietest fading voice
+        return quietest;
+    }
+
+    private void release(Voice voice) {
+        voice.releasing = true;
+        voice.envelopeStep = -1f / FADE_FRAMES;
+    }
+
+    private void deactivate(Voice voice) {
+        voice.active = false;
+        voice.tagged = false;
+        voice.samples = null;
+        voice.render = null;
+        voice.clip = null;
+    }
+
+    /**
+     * Mixes one block of all active voices.
+     * @param out Receives {@link #BLOCK_FRAMES} samples
+     * @return true if any voice contributed to the block
+     */
+    public boolean mixBlock(short[] out) {
+        Arrays.fill(mixBuffer, 0f);
+        boolean audible = false;
+
+        for (Voice voice : voices) {
+            if (!voice.active) {
+                continue;
+            }
+            if (voice.delay >= BLOCK_FRAMES) {
+                // Starts in a later block
+                voice.delay -= BLOCK_FRAMES;
+                continue;
+            }
+            audible = true;
+            ToneRender render = voice.render;
+            int length = voice.length;
+            // Mixed into [start, frames) of the block
+            int start = voice.delay;
+            voice.delay = 0;
+            // Only the rendered part of an in-progress render may be read
+            int available = render != null ? render.getReady() : length;
+            int frames = start + Math.min(BLOCK_FRAMES - start, available - voice.position);
+            boolean starved = frames < BLOCK_FRAMES && available < length;
+            if (voice.position == 0 && frames > start) {
+                if (render != null) {
+                    render.markFirstSound();
+                }
+                if (voice.tagged) {
+                    voice.tagged = false;
+                    taggedStart = start;
+                }
+            }
+            float scale = voice.gain / 32768f;
+            float envelope = voice.envelope;
+            float step = voice.envelopeStep;
+            int pos = voice.position;
+
+            int mixed = start;
+            while (mixed < frames) {
+                short[] source;
+                int offset;
+                int count;
+                if (voice.clip != null) {
+                    if (pos >= voice.decodedEnd) {
+                        decodeBlock(voice, pos / ImaAdpcm.BLOCK_SAMPLES);
+                    }
+                    source = voice.decoded;
+                    offset = voice.decodedStart;
+                    count = Math.min(frames, mixed + voice.decodedEnd - pos);
+                } else {
+                    source = voice.samples;
+                    offset = 0;
+                    count = frames;
+                }
+
+                for (int i = mixed; i < count; i++) {
+                    if (step != 0f) {
+                        envelope += step;
+                        if (envelope >= 1f) {
+                            envelope = 1f;
+                            step = 0f;
+                        } else if (envelope <= 0f) {
+                            envelope = 0f;
+                            count = i;
+                            frames = i;
+                            break;
+                        }
+                    }
+                    mixBuffer[i] += source[pos++ - offset] * scale * envelope;
+                }
+                mixed = count;
+            }
+
+            voice.position = pos;
+            voice.envelope = envelope;
+            voice.envelopeStep = step;
+            if (pos >= length || (voice.releasing && envelope <= 0f)) {
+                deactivate(voice);
+            } else if (starved) {
+                if (render.isCancelled() || voice.releasing) {
+                    // Nothing more is coming, or it was fading out anyway
+                    deactivate(voice);
+                } else {
+                    PipelineStats.count(PipelineStats.Counter.UNDERRUN_BLOCKS);
+                }
+            }
+        }
+
+        for (int i = 0; i < BLOCK_FRAMES; i++) {
+            float value = mixBuffer[i];
+            if (value > 1f) {
+                value = 1f;
+            } else if (value < -1f) {
+                value = -1f;
+            }
+            out[i] = (short) (value * Short.MAX_VALUE);
+        }
+        return audible;
+    }
+
+    private void decodeBlock(Voice voice, int block) {
+        long startNanos = PipelineStats.isEnabled() ? System.nanoTime() : 0;
+        int count = ImaAdpcm.decodeBlock(voice.clip, block, voice.decoded);
+        voice.decodedStart = block * ImaAdpcm.BLOCK_SAMPLES;
+        voice.decodedEnd = voice.decodedStart + count;
+        if (startNanos != 0) {
+            PipelineStats.record(PipelineStats.Metric.DECODE_NS_PER_SAMPLE,
+                (System.nanoTime() - startNanos) / count);
+        }
+    }
+}
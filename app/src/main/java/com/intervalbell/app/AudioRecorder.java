@@ -1,44 +1,45 @@
 package com.intervalbell.app;
 
 import android.content.Context;
-import android.media.MediaPlayer;
 import android.media.MediaRecorder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Handles audio recording for custom bell sounds.
- * Records audio using MediaRecorder and saves to app-specific storage.
+ * Records audio using MediaRecorder into the {@link SoundLibrary}, which trims
+ * and loudness-normalizes each saved recording once via {@link RecordingProcessor}.
+ * Processing runs on a background thread; callbacks are always invoked on the
+ * main thread.
  */
 public class AudioRecorder {
     private static final String TAG = "AudioRecorder";
-    private static final String RECORDING_FILENAME = "custom_bell.3gp";
 
     private MediaRecorder mediaRecorder;
-    private MediaPlayer mediaPlayer;
-    private String recordingFilePath;
+    private final SoundLibrary library;
+    private File recordingFile;
     private boolean isRecording = false;
     private long recordingStartTime = 0;
-    private long recordingDurationMs = 0;
     private Context context;
+    private final ExecutorService processor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     public interface RecordingCallback {
         void onRecordingStarted();
-        void onRecordingStopped(long durationMs);
+        void onRecordingStopped(SoundLibrary.Entry entry);
         void onRecordingError(String error);
-        void onPlaybackStarted();
-        void onPlaybackCompleted();
-        void onPlaybackError(String error);
     }
 
-    public AudioRecorder(Context context) {
+    public AudioRecorder(Context context, SoundLibrary library) {
         this.context = context;
-        // Use app-specific storage (no permission needed for Android 10+)
-        File recordingsDir = context.getFilesDir();
-        this.recordingFilePath = new File(recordingsDir, RECORDING_FILENAME).getAbsolutePath();
+        this.library = library;
     }
 
     /**
@@ -60,10 +61,13 @@ public class AudioRecorder {
                 mediaRecorder = new MediaRecorder();
             }
 
+            // Use app-specific storage (no permission needed for Android 10+)
+            recordingFile = library.newRecordingFile();
+
             mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
             mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
             mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
-            mediaRecorder.setOutputFile(recordingFilePath);
+            mediaRecorder.setOutputFile(recordingFile.getAbsolutePath());
 
             mediaRecorder.prepare();
             mediaRecorder.start();
@@ -74,7 +78,7 @@ public class AudioRecorder {
                 callback.onRecordingStarted();
             }
 
-            Log.d(TAG, "Recording started: " + recordingFilePath);
+            Log.d(TAG, "Recording started: " + recordingFile);
 
         } catch (IOException | IllegalStateException e) {
             Log.e(TAG, "Error starting recording", e);
@@ -86,10 +90,12 @@ public class AudioRecorder {
     }
 
     /**
-     * Stops the current recording.
-     * @param callback Callback for recording events
+     * Stops the current recording and adds it to the library.
+     * @param name Display name for the new sound
+     * @param callback Callback for recording events, invoked on the main thread
+     *     once the recording is processed
      */
-    public void stopRecording(RecordingCallback callback) {
+    public void stopRecording(String name, RecordingCallback callback) {
         if (!isRecording || mediaRecorder == null) {
             if (callback != null) {
                 callback.onRecordingError("Not currently recording");
@@ -99,160 +105,39 @@ public class AudioRecorder {
 
         try {
             mediaRecorder.stop();
-            recordingDurationMs = System.currentTimeMillis() - recordingStartTime;
+            long recordingDurationMs = System.currentTimeMillis() - recordingStartTime;
             isRecording = false;
             releaseRecorder();
 
-            if (callback != null) {
-                callback.onRecordingStopped(recordingDurationMs);
-            }
-
             Log.d(TAG, "Recording stopped. Duration: " + recordingDurationMs + "ms");
 
+            // Trim and normalize off the main thread; report the processed sound on it
+            final File recorded = recordingFile;
+            processor.execute(() -> {
+                try {
+                    SoundLibrary.Entry entry = library.addRecording(recorded, name);
+                    if (callback != null) {
+                        mainHandler.post(() -> callback.onRecordingStopped(entry));
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error processing recording", e);
+                    if (callback != null) {
+                        mainHandler.post(() ->
+                            callback.onRecordingError("Failed to process recording: " + e.getMessage()));
+                    }
+                }
+            });
+
         } catch (RuntimeException e) {
             Log.e(TAG, "Error stopping recording", e);
             releaseRecorder();
             isRecording = false;
-            if (callback != null) {
-                callback.onRecordingError("Failed to stop recording: " + e.getMessage());
+            if (recordingFile != null) {
+                recordingFile.delete();
             }
-        }
-    }
-
-    /**
-     * Plays the recorded audio.
-     * @param callback Callback for playback events
-     */
-    public void playRecording(RecordingCallback callback) {
-        if (!hasRecording()) {
             if (callback != null) {
-                callback.onPlaybackError("No recording available");
-            }
-            return;
-        }
-
-        releasePlayer();
-
-        try {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setDataSource(recordingFilePath);
-            mediaPlayer.prepare();
-
-            mediaPlayer.setOnCompletionListener(mp -> {
-                releasePlayer();
-                if (callback != null) {
-                    callback.onPlaybackCompleted();
-                }
-            });
-
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                releasePlayer();
-                if (callback != null) {
-                    callback.onPlaybackError("Playback error: " + what);
-                }
-                return true;
-            });
-
-            mediaPlayer.start();
-            if (callback != null) {
-                callback.onPlaybackStarted();
-            }
-
-            Log.d(TAG, "Playback started");
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error playing recording", e);
-            releasePlayer();
-            if (callback != null) {
-                callback.onPlaybackError("Failed to play recording: " + e.getMessage());
-            }
-        }
-    }
-
-    /**
-     * Plays the recorded audio without callback (for bell playback during interval).
-     */
-    public void playRecordingForBell() {
-        if (!hasRecording()) {
-            Log.w(TAG, "No recording available for bell playback");
-            return;
-        }
-
-        releasePlayer();
-
-        try {
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setDataSource(recordingFilePath);
-            mediaPlayer.prepare();
-
-            mediaPlayer.setOnCompletionListener(mp -> releasePlayer());
-            mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                releasePlayer();
-                return true;
-            });
-
-            mediaPlayer.start();
-            Log.d(TAG, "Bell playback started");
-
-        } catch (IOException e) {
-            Log.e(TAG, "Error playing bell recording", e);
-            releasePlayer();
-        }
-    }
-
-    /**
-     * Checks if a recording exists.
-     * @return true if a recording file exists
-     */
-    public boolean hasRecording() {
-        File file = new File(recordingFilePath);
-        return file.exists() && file.length() > 0;
-    }
-
-    /**
-     * Gets the duration of the last recording in milliseconds.
-     * @return Duration in milliseconds, or 0 if no recording
-     */
-    public long getRecordingDurationMs() {
-        return recordingDurationMs;
-    }
-
-    /**
-     * Gets the duration of the saved recording by reading the file.
-     * @return Duration in seconds, or 0 if no recording
-     */
-    public long getRecordingDurationSeconds() {
-        if (!hasRecording()) {
-            return 0;
-        }
-
-        MediaPlayer tempPlayer = null;
-        try {
-            tempPlayer = new MediaPlayer();
-            tempPlayer.setDataSource(recordingFilePath);
-            tempPlayer.prepare();
-            long durationMs = tempPlayer.getDuration();
-            tempPlayer.release();
-            // Round up to ensure we have enough time
-            return (durationMs + 999) / 1000;
-        } catch (IOException e) {
-            Log.e(TAG, "Error getting recording duration", e);
-            if (tempPlayer != null) {
-                tempPlayer.release();
+                callback.onRecordingError("Failed to stop recording: " + e.getMessage());
             }
-            return 0;
-        }
-    }
-
-    /**
-     * Deletes the current recording.
-     */
-    public void deleteRecording() {
-        File file = new File(recordingFilePath);
-        if (file.exists()) {
-            file.delete();
-            recordingDurationMs = 0;
-            Log.d(TAG, "Recording deleted");
         }
     }
 
@@ -275,33 +160,23 @@ public class AudioRecorder {
         }
     }
 
-    private void releasePlayer() {
-        if (mediaPlayer != null) {
-            try {
-                if (mediaPlayer.isPlaying()) {
-                    mediaPlayer.stop();
-                }
-                mediaPlayer.release();
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing player", e);
-            }
-            mediaPlayer = null;
-        }
-    }
-
     /**
-     * Releases all resources. Call when done using the recorder.
+     * Releases all resources. Call when done using the recorder. A recording
+     * still being processed is finished and saved.
      */
     public void release() {
+        processor.shutdown();
         if (isRecording) {
             try {
                 mediaRecorder.stop();
             } catch (Exception e) {
                 Log.e(TAG, "Error stopping recording on release", e);
             }
+            if (recordingFile != null) {
+                recordingFile.delete();
+            }
         }
         releaseRecorder();
-        releasePlayer();
         isRecording = false;
     }
 }
@@ -0,0 +1,67 @@
+package com.intervalbell.app;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Handles Stop and Skip from the notification and the widget without opening
+ * the app. Both only change the saved {@link TimerSnapshot}; a running
+ * activity follows the snapshot, and the widget and notification are redrawn
+ * from it.
+ *
+ * Also receives the bell wakeup alarms of {@link HandlerClock}. The bells are
+ * rung by the activity's process; if that process has died, the alarm is the
+ * first to notice, and the schedule is stopped so that the notification and
+ * widget do not keep counting down to bells that will not ring.
+ */
+public class BellActionReceiver extends BroadcastReceiver {
+    private static final String TAG = "BellActionReceiver";
+
+    static final String ACTION_STOP = "com.intervalbell.app.action.STOP";
+
+    // Skips the bell that is due and counts a full interval from now
+    static final String ACTION_SKIP = "com.intervalbell.app.action.SKIP";
+
+    static final String ACTION_WAKEUP = "com.intervalbell.app.action.WAKEUP";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        SharedPreferences prefs = context.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        String action = intent.getAction();
+        if (ACTION_STOP.equals(action)) {
+            TimerSnapshot.clear(prefs);
+        } else if (ACTION_SKIP.equals(action)) {
+            TimerSnapshot snapshot = TimerSnapshot.load(prefs);
+            if (snapshot == null) {
+                return;
+            }
+            snapshot.withAnchor(SystemClock.elapsedRealtime()).save(prefs);
+        } else if (ACTION_WAKEUP.equals(action)) {
+            if (HandlerClock.onWakeupAlarm(intent)) {
+                return;
+            }
+            TimerSnapshot snapshot = TimerSnapshot.load(prefs);
+            // A metronome schedule is rung by the sequencer and sets no alarms
+            if (snapshot == null || snapshot.sequenced) {
+                return;
+            }
+            Log.w(TAG, "Bell alarm with no schedule running; the app was stopped, ending the schedule");
+            TimerSnapshot.clear(prefs);
+        } else {
+            return;
+        }
+        BellWidgetProvider.update(context);
+        BellNotification.update(context);
+    }
+
+    static PendingIntent getPendingIntent(Context context, String action) {
+        Intent intent = new Intent(context, BellActionReceiver.class).setAction(action);
+        return PendingIntent.getBroadcast(context, 0, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
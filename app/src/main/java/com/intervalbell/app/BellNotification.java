@@ -0,0 +1,101 @@
+package com.intervalbell.app;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import java.util.Locale;
+
+/**
+ * Ongoing notification for a running schedule, with a countdown to the next
+ * bell and Stop/Skip actions. The countdown is the notification's chronometer,
+ * drawn by the system, so the notification is only posted again when a bell
+ * rings or the schedule changes; never per tick. The actions go to
+ * {@link BellActionReceiver}, so they work without opening the app.
+ */
+public final class BellNotification {
+    private static final String CHANNEL_ID = "interval";
+    private static final int NOTIFICATION_ID = 1;
+
+    private BellNotification() {
+    }
+
+    /**
+     * Posts the notification for the saved schedule, or removes it if none is
+     * running. Call on each bell and state change.
+     */
+    public static void update(Context context) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(context);
+        TimerSnapshot snapshot = TimerSnapshot.load(
+            context.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE));
+        if (snapshot == null) {
+            manager.cancel(NOTIFICATION_ID);
+            return;
+        }
+        if (!manager.areNotificationsEnabled()) {
+            return;
+        }
+        createChannel(context);
+
+        // The chronometer counts down to a wall-clock time; in metronome mode,
+        // where bells come too often for that, it counts up from the start
+        long now = SystemClock.elapsedRealtime();
+        long when = snapshot.sequenced
+            ? System.currentTimeMillis() - (now - snapshot.anchorElapsedMs)
+            : System.currentTimeMillis() + snapshot.getMillisUntilNextBell(now);
+
+        Intent open = new Intent(context, MainActivity.class)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(R.drawable.ic_bell)
+            .setContentTitle(context.getString(snapshot.sequenced
+                ? R.string.notification_title_metronome : R.string.notification_title))
+            .setContentText(context.getString(R.string.notification_text,
+                formatInterval(snapshot.intervalMs)))
+            .setUsesChronometer(true)
+            .setChronometerCountDown(!snapshot.sequenced)
+            .setWhen(when)
+            .setShowWhen(true)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setSilent(true)
+            .setCategory(NotificationCompat.CATEGORY_STOPWATCH)
+            .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setContentIntent(PendingIntent.getActivity(context, 0, open, PendingIntent.FLAG_IMMUTABLE))
+            .addAction(0, context.getString(R.string.notification_skip),
+                BellActionReceiver.getPendingIntent(context, BellActionReceiver.ACTION_SKIP))
+            .addAction(0, context.getString(R.string.stop_button),
+                BellActionReceiver.getPendingIntent(context, BellActionReceiver.ACTION_STOP));
+        manager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+            context.getString(R.string.notification_channel), NotificationManager.IMPORTANCE_LOW);
+        channel.setDescription(context.getString(R.string.notification_channel_description));
+        channel.setShowBadge(false);
+        // Creating an existing channel again only updates its name and description
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    private static String formatInterval(long intervalMs) {
+        if (intervalMs % 1000 != 0) {
+            // Metronome intervals, to the hundredth
+            return String.format(Locale.US, "%.2f s", intervalMs / 1000.0);
+        }
+        long totalSeconds = intervalMs / 1000;
+        return String.format(Locale.US, "%02dh %02dm %02ds",
+            totalSeconds / 3600, (totalSeconds % 3600) / 60, totalSeconds % 60);
+    }
+}
@@ -0,0 +1,160 @@
+package com.intervalbell.app;
+
+import android.util.Log;
+
+/**
+ * Rings a bell on a fixed grid of output frames, for intervals too short or
+ * too regular for timer callbacks, such as a metronome. Bell n starts at
+ * frame {@code start + first + n * interval} of the stream the
+ * {@link AudioEngine} writes. Each position is computed from n rather than
+ * added up, so rounding does not accumulate and the grid never drifts against
+ * the output clock. A bell is started inside the block that holds its frame,
+ * at the exact offset, so the timing does not depend on the block size or
+ * on any other thread.
+ *
+ * The sound is set separately from the grid: finished samples, a compressed
+ * clip that each bell decodes as it plays, or a render still in progress,
+ * which is then played as it fills and swapped for its samples once
+ * complete. Engine thread only, like the mixer.
+ */
+final class BellSequencer {
+    private static final String TAG = "BellSequencer";
+
+    private static final int SAMPLE_RATE = ToneSynthesizer.SAMPLE_RATE;
+    private static final int BLOCK_FRAMES = AudioMixer.BLOCK_FRAMES;
+
+    // Interval and delay of the first bell; an interval of 0 means stopped
+    private long intervalMs;
+    private long firstBellMs;
+    // Stream frame the grid counts from, -1 until the first block is mixed
+    private long startFrame = -1;
+    // Index of the next bell on the grid
+    private long next;
+    private long generation;
+
+    private short[] samples;
+    private ImaAdpcm.Clip clip;
+    private ToneRender render;
+
+    /**
+     * Starts a new grid when the next block is mixed, dropping the sound of any previous one.
+     * @param intervalMs Time between bells
+     * @param firstBellMs Time from now to the first bell
+     * @return Generation of the new grid, see {@link #getGeneration}
+     */
+    long start(long intervalMs, long firstBellMs) {
+        this.intervalMs = intervalMs;
+        this.firstBellMs = firstBellMs;
+        startFrame = -1;
+        next = 0;
+        clearSound();
+        return ++generation;
+    }
+
+    void stop() {
+        intervalMs = 0;
+        clearSound();
+        generation++;
+    }
+
+    private void clearSound() {
+        samples = null;
+        clip = null;
+        render = null;
+    }
+
+    boolean isRunning() {
+        return intervalMs > 0;
+    }
+
+    /**
+     * Gets a number that changes with every start and stop, so that a sound
+     * that finishes loading late can tell whether its grid is still running.
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets the sound of the running grid to finished samples.
+     */
+    void setSamples(short[] samples) {
+        if (isRunning()) {
+            clearSound();
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Sets the sound of the running grid to a compressed clip.
+     */
+    void setClip(ImaAdpcm.Clip clip) {
+        if (isRunning()) {
+            clearSound();
+            this.clip = clip;
+        }
+    }
+
+    /**
+     * Sets the sound of the running grid to a render that may still be in progress.
+     */
+    void setRender(ToneRender render) {
+        if (isRunning()) {
+            clearSound();
+            this.render = render;
+        }
+    }
+
+    /**
+     * Starts the bells that fall into the block about to be mixed.
+     * @param blockFrame Stream frame of the first sample of the block
+     */
+    void mixInto(AudioMixer mixer, long blockFrame) {
+        if (!isRunning()) {
+            return;
+        }
+        if (startFrame < 0 || blockFrame < startFrame) {
+            // First block, or the stream restarted with a new track
+            startFrame = blockFrame;
+            next = 0;
+        }
+        long blockEnd = blockFrame + BLOCK_FRAMES;
+        long frame;
+        while ((frame = getBellFrame(next)) < blockEnd) {
+            next++;
+            if (!playBell(mixer, (int) (frame - blockFrame))) {
+                Log.w(TAG, "Bell " + (next - 1) + " skipped, its sound is not ready");
+                continue;
+            }
+            PipelineStats.count(PipelineStats.Counter.RINGS);
+            SessionStats.ring();
+        }
+    }
+
+    private boolean playBell(AudioMixer mixer, int offset) {
+        if (render != null) {
+            if (render.isComplete()) {
+                samples = render.getSamples();
+                render = null;
+            } else if (render.isCancelled() || render.getReady() == 0) {
+                return false;
+            } else {
+                mixer.play(render, 1f, offset);
+                return true;
+            }
+        }
+        if (clip != null) {
+            mixer.play(clip, 1f, offset);
+            return true;
+        }
+        if (samples == null) {
+            return false;
+        }
+        mixer.play(samples, 1f, offset);
+        return true;
+    }
+
+    private long getBellFrame(long index) {
+        return startFrame + (firstBellMs + index * intervalMs) * SAMPLE_RATE / 1000;
+    }
+}
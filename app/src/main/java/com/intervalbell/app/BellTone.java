@@ -6,10 +6,11 @@ package com.intervalbell.app;
  */
 public enum BellTone {
     // Custom Recording (must be first for easy access)
-    CUSTOM_RECORDING(R.string.tone_custom_recording, "🎙️", null) {
+    // Entry point to the SoundLibrary; library sounds are listed with this emoji
+    CUSTOM_RECORDING(R.string.tone_custom_recording, "🎙️", (ToneSynthesizer.ToneType) null) {
         @Override
-        public void play(ToneSynthesizer synth) {
-            // Custom recording playback is handled separately via AudioRecorder
+        public void play(ToneSynthesizer synth, ToneParams params) {
+            // Library sound playback is handled separately via SoundLibrary
             // This method is not used for custom recordings
         }
 
@@ -46,16 +47,34 @@ public enum BellTone {
     // Notification
     GENTLE_ALERT(R.string.tone_gentle_alert, "🔉", ToneSynthesizer.ToneType.GENTLE_ALERT),
     SUCCESS_TONE(R.string.tone_success, "✅", ToneSynthesizer.ToneType.SUCCESS_TONE),
-    SOFT_GONG(R.string.tone_soft_gong, "🥁", ToneSynthesizer.ToneType.SOFT_GONG);
+    SOFT_GONG(R.string.tone_soft_gong, "🥁", ToneSynthesizer.ToneType.SOFT_GONG),
+
+    // Layered (pre-mixed composites)
+    GONG_AND_CHIMES(R.string.tone_gong_and_chimes, "🏯", new CompositeBell(
+            new CompositeBell.Layer(ToneSynthesizer.ToneType.TEMPLE_GONG, 0, 1.0f),
+            new CompositeBell.Layer(ToneSynthesizer.ToneType.WIND_CHIMES, 250, 0.6f))),
+    MINDFUL_TRIPLE(R.string.tone_mindful_triple, "🪷", new CompositeBell(
+            new CompositeBell.Layer(ToneSynthesizer.ToneType.MINDFUL_BELL, 0, 1.0f),
+            new CompositeBell.Layer(ToneSynthesizer.ToneType.MINDFUL_BELL, 1000, 1.0f),
+            new CompositeBell.Layer(ToneSynthesizer.ToneType.MINDFUL_BELL, 2000, 1.0f)));
 
     private final int nameResId;
     private final String emoji;
     private final ToneSynthesizer.ToneType toneType;
+    private final CompositeBell composite;
 
     BellTone(int nameResId, String emoji, ToneSynthesizer.ToneType toneType) {
         this.nameResId = nameResId;
         this.emoji = emoji;
         this.toneType = toneType;
+        this.composite = null;
+    }
+
+    BellTone(int nameResId, String emoji, CompositeBell composite) {
+        this.nameResId = nameResId;
+        this.emoji = emoji;
+        this.toneType = null;
+        this.composite = composite;
     }
 
     public int getNameResId() {
@@ -70,14 +89,83 @@ public enum BellTone {
         return toneType;
     }
 
+    /**
+     * @return The layered composite, or null for single-tone bells
+     */
+    public CompositeBell getComposite() {
+        return composite;
+    }
+
     /**
      * Play the bell tone sound using the synthesizer.
      * @param synth The ToneSynthesizer instance to use for playback
      */
     public void play(ToneSynthesizer synth) {
-        if (toneType != null && synth != null) {
-            synth.playTone(toneType);
+        play(synth, ToneParams.DEFAULT);
+    }
+
+    /**
+     * Play the bell tone sound with adjusted pitch, decay and brightness.
+     * Composites always play their layers unadjusted.
+     * @param synth The ToneSynthesizer instance to use for playback
+     * @param params Adjustments for single-tone bells
+     */
+    public void play(ToneSynthesizer synth, ToneParams params) {
+        if (synth == null) {
+            return;
+        }
+        if (composite != null) {
+            synth.playComposite(composite);
+        } else if (toneType != null) {
+            synth.playTone(toneType, params);
+        }
+    }
+
+    /**
+     * Renders the bell tone into the synthesizer's cache ahead of playing it.
+     * @param synth The ToneSynthesizer instance to render with
+     * @param params Adjustments for single-tone bells
+     */
+    public void preload(ToneSynthesizer synth, ToneParams params) {
+        if (synth == null) {
+            return;
+        }
+        if (composite != null) {
+            synth.preloadComposite(composite);
+        } else if (toneType != null) {
+            synth.preloadTone(toneType, params);
+        }
+    }
+
+    /**
+     * Makes this bell the sound of the synthesizer's running sequence.
+     * @param synth The ToneSynthesizer instance running the sequence
+     * @param params Adjustments for single-tone bells
+     */
+    public void sequence(ToneSynthesizer synth, ToneParams params) {
+        if (synth == null) {
+            return;
+        }
+        if (composite != null) {
+            synth.setSequenceComposite(composite);
+        } else if (toneType != null) {
+            synth.setSequenceTone(toneType, params);
+        }
+    }
+
+    /**
+     * Gets the waveform summary of the unadjusted bell, rendering it on first use.
+     * Renders on the calling thread.
+     * @param synth The ToneSynthesizer instance to render with
+     * @return The summary, or null for the custom recording option
+     */
+    public PeakPyramid getPeaks(ToneSynthesizer synth) {
+        if (composite != null) {
+            return synth.getCompositePeaks(composite);
+        } else if (toneType != null) {
+            return synth.getTonePeaks(toneType, ToneParams.DEFAULT);
         }
+        return null;
     }
 
     /**
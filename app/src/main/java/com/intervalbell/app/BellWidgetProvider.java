@@ -0,0 +1,84 @@
+package com.intervalbell.app;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.RemoteViews;
+
+/**
+ * Home-screen widget with the countdown to the next bell and Start/Stop.
+ * The countdown is a {@link android.widget.Chronometer} counting down to the
+ * deadline, drawn by the launcher, so the widget is only updated when a bell
+ * rings or the schedule starts or stops; never per second.
+ *
+ * In metronome mode it counts up from the start instead.
+ *
+ * Start opens the activity, which rings the bells. Stop goes to
+ * {@link BellActionReceiver}, so it works without bringing the app to the front.
+ */
+public class BellWidgetProvider extends AppWidgetProvider {
+    @Override
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        manager.updateAppWidget(appWidgetIds, buildViews(context));
+    }
+
+    /**
+     * Redraws every placed widget from the saved schedule. Call on each bell
+     * and state change.
+     */
+    public static void update(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        manager.updateAppWidget(new ComponentName(context, BellWidgetProvider.class), buildViews(context));
+    }
+
+    private static RemoteViews buildViews(Context context) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_bell);
+        TimerSnapshot snapshot = TimerSnapshot.load(getPreferences(context));
+        boolean running = snapshot != null;
+        if (running && snapshot.sequenced) {
+            // Bells come too often to count down to: count up from the start instead
+            views.setTextViewText(R.id.widgetLabel, context.getString(R.string.widget_metronome));
+            views.setChronometer(R.id.widgetCountdown, snapshot.anchorElapsedMs, null, true);
+            views.setChronometerCountDown(R.id.widgetCountdown, false);
+        } else if (running) {
+            // The chronometer base is on the elapsed-realtime clock, like the snapshot
+            long deadline = snapshot.getNextBellElapsedMs(SystemClock.elapsedRealtime());
+            views.setTextViewText(R.id.widgetLabel, context.getString(R.string.widget_next_bell));
+            views.setChronometer(R.id.widgetCountdown, deadline, null, true);
+            views.setChronometerCountDown(R.id.widgetCountdown, true);
+        } else {
+            views.setChronometer(R.id.widgetCountdown, SystemClock.elapsedRealtime(), null, false);
+        }
+        views.setViewVisibility(R.id.widgetLabel, running ? View.VISIBLE : View.GONE);
+        views.setViewVisibility(R.id.widgetCountdown, running ? View.VISIBLE : View.GONE);
+        views.setViewVisibility(R.id.widgetIdleText, running ? View.GONE : View.VISIBLE);
+        views.setViewVisibility(R.id.widgetStartButton, running ? View.GONE : View.VISIBLE);
+        views.setViewVisibility(R.id.widgetStopButton, running ? View.VISIBLE : View.GONE);
+
+        Intent start = new Intent(context, MainActivity.class)
+            .setAction(MainActivity.ACTION_START)
+            .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP
+                | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        views.setOnClickPendingIntent(R.id.widgetStartButton, PendingIntent.getActivity(
+            context, 0, start, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+
+        views.setOnClickPendingIntent(R.id.widgetStopButton,
+            BellActionReceiver.getPendingIntent(context, BellActionReceiver.ACTION_STOP));
+
+        // Tapping the countdown opens the app
+        Intent open = new Intent(context, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        views.setOnClickPendingIntent(R.id.widgetRoot, PendingIntent.getActivity(
+            context, 1, open, PendingIntent.FLAG_IMMUTABLE));
+        return views;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
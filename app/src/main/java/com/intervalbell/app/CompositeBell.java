@@ -0,0 +1,69 @@
+package com.intervalbell.app;
+
+/**
+ * A bell made of synthesized tones layered at fixed offsets, e.g. a gong strike
+ * with wind chimes on top or three strikes one second apart.
+ * The layers are pre-mixed once into a single buffer cached under
+ * {@link #getCacheKey()}, so a composite rings at the cost of a single tone.
+ */
+public final class CompositeBell {
+
+    /**
+     * One tone within a composite.
+     */
+    public static final class Layer {
+        public final ToneSynthesizer.ToneType type;
+        public final int offsetMs;
+        public final float gain;
+
+        public Layer(ToneSynthesizer.ToneType type, int offsetMs, float gain) {
+            this.type = type;
+            this.offsetMs = offsetMs;
+            this.gain = gain;
+        }
+    }
+
+    private final Layer[] layers;
+    private final String cacheKey;
+
+    public CompositeBell(Layer... layers) {
+        this.layers = layers.clone();
+        this.cacheKey = "composite:" + Long.toHexString(contentHash(this.layers));
+    }
+
+    /**
+     * Gets a copy of the layers of this composite.
+     */
+    public Layer[] getLayers() {
+        return layers.clone();
+    }
+
+    /**
+     * Gets the key of the pre-mixed buffer. Composites with identical layers
+     * share a key, whatever instance they were built from.
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * 64-bit FNV-1a over the layer definitions.
+     */
+    private static long contentHash(Layer[] layers) {
+        long hash = 0xcbf29ce484222325L;
+        for (Layer layer : layers) {
+            hash = mix(hash, layer.type.ordinal());
+            hash = mix(hash, layer.offsetMs);
+            hash = mix(hash, Float.floatToIntBits(layer.gain));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
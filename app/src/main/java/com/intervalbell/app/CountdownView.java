@@ -0,0 +1,221 @@
+package com.intervalbell.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Countdown to the next bell as "00h 00m 00s", with a progress line under it
+ * that shrinks over the interval. Every digit is drawn centered in a cell as
+ * wide as the widest digit, so the size is measured once and changing time
+ * never asks for a layout pass. A frame redraws this view only, and only when
+ * a digit changed or the line moved by half a pixel.
+ *
+ * The view keeps the time itself from the deadline on the elapsed-realtime
+ * clock. Frames, synced to {@link Choreographer}, only run while it is visible
+ * and counting; hidden or stopped, it schedules nothing. When repeating, as
+ * for a metronome, it moves on to the next deadline of the grid by itself.
+ */
+public class CountdownView extends View implements Choreographer.FrameCallback {
+    private static final char[] PATTERN = "00h 00m 00s".toCharArray();
+
+    // Indices of the digit pairs in PATTERN
+    private static final int HOURS = 0;
+    private static final int MINUTES = 4;
+    private static final int SECONDS = 8;
+
+    private static final float LETTER_SPACING = 0.02f;
+
+    private final char[] text = PATTERN.clone();
+    private final float[] cellWidths = new float[PATTERN.length];
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint progressPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint trackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float textWidth;
+    private final float textHeight;
+    private final float ascent;
+    private final float progressHeight;
+    private final float progressGap;
+
+    private long deadlineElapsedMs;
+    private long intervalMs;
+    private boolean counting;
+    private boolean repeating;
+    private boolean visible;
+    private boolean framePending;
+    private long shownSeconds = -1;
+    private float progress;
+    private int shownProgressSteps = -1;
+
+    public CountdownView(Context context) {
+        this(context, null);
+    }
+
+    public CountdownView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        int color = ContextCompat.getColor(context, R.color.accent);
+        textPaint.setColor(color);
+        textPaint.setTextSize(getResources().getDimension(R.dimen.countdown_text_size));
+        textPaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.BOLD));
+        progressPaint.setColor(color);
+        progressPaint.setStyle(Paint.Style.STROKE);
+        progressPaint.setStrokeCap(Paint.Cap.ROUND);
+        progressHeight = getResources().getDimension(R.dimen.countdown_progress_height);
+        progressPaint.setStrokeWidth(progressHeight);
+        trackPaint.set(progressPaint);
+        trackPaint.setColor(ContextCompat.getColor(context, R.color.time_display_inactive));
+        progressGap = progressHeight * 3;
+
+        // Measured once: digits take the widest digit's cell, the rest their own width
+        float digitWidth = 0;
+        for (char digit = '0'; digit <= '9'; digit++) {
+            digitWidth = Math.max(digitWidth, textPaint.measureText(String.valueOf(digit)));
+        }
+        float spacing = LETTER_SPACING * textPaint.getTextSize();
+        float width = 0;
+        for (int i = 0; i < PATTERN.length; i++) {
+            cellWidths[i] = (Character.isDigit(PATTERN[i])
+                ? digitWidth : textPaint.measureText(PATTERN, i, 1)) + spacing;
+            width += cellWidths[i];
+        }
+        textWidth = width;
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        ascent = -metrics.ascent;
+        textHeight = metrics.descent - metrics.ascent;
+        textPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    /**
+     * Counts down to a deadline.
+     * @param deadlineElapsedMs When the next bell is due, in {@link SystemClock#elapsedRealtime()}
+     * @param intervalMs Length of the interval, for the progress line
+     */
+    public void start(long deadlineElapsedMs, long intervalMs) {
+        start(deadlineElapsedMs, intervalMs, false);
+    }
+
+    /**
+     * Counts down to a deadline and then on to every following one, an interval apart.
+     * @param deadlineElapsedMs When the next bell is due, in {@link SystemClock#elapsedRealtime()}
+     * @param intervalMs Time between bells
+     */
+    public void startRepeating(long deadlineElapsedMs, long intervalMs) {
+        start(deadlineElapsedMs, intervalMs, true);
+    }
+
+    private void start(long deadlineElapsedMs, long intervalMs, boolean repeating) {
+        this.deadlineElapsedMs = deadlineElapsedMs;
+        this.intervalMs = intervalMs;
+        this.repeating = repeating && intervalMs > 0;
+        counting = true;
+        update(SystemClock.elapsedRealtime());
+        updateRunning();
+    }
+
+    /**
+     * Stops counting and shows zero.
+     */
+    public void stop() {
+        counting = false;
+        repeating = false;
+        updateRunning();
+        deadlineElapsedMs = 0;
+        update(0);
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        visible = isVisible;
+        updateRunning();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        visible = false;
+        updateRunning();
+    }
+
+    private void updateRunning() {
+        if (counting && visible && isAttachedToWindow()) {
+            if (!framePending) {
+                framePending = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        } else if (framePending) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            framePending = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        framePending = false;
+        update(SystemClock.elapsedRealtime());
+        updateRunning();
+    }
+
+    /**
+     * Moves the digits and the line on to the given time, redrawing if they changed.
+     */
+    private void update(long nowElapsedMs) {
+        if (repeating && counting && nowElapsedMs >= deadlineElapsedMs) {
+            deadlineElapsedMs += ((nowElapsedMs - deadlineElapsedMs) / intervalMs + 1) * intervalMs;
+        }
+        long remainingMs = Math.max(0, deadlineElapsedMs - nowElapsedMs);
+        // Rounded up, so the full interval shows at the start and zero at the bell
+        long totalSeconds = (remainingMs + 999) / 1000;
+        progress = intervalMs > 0 ? Math.min(1f, (float) remainingMs / intervalMs) : 0f;
+        int progressSteps = (int) (progress * (textWidth - progressHeight) * 2);
+        if (totalSeconds == shownSeconds && progressSteps == shownProgressSteps) {
+            return;
+        }
+        shownSeconds = totalSeconds;
+        shownProgressSteps = progressSteps;
+        setPair(HOURS, Math.min(99, totalSeconds / 3600));
+        setPair(MINUTES, (totalSeconds % 3600) / 60);
+        setPair(SECONDS, totalSeconds % 60);
+        invalidate();
+    }
+
+    private void setPair(int index, long value) {
+        text[index] = (char) ('0' + value / 10);
+        text[index + 1] = (char) ('0' + value % 10);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) Math.ceil(textWidth) + getPaddingLeft() + getPaddingRight();
+        int height = (int) Math.ceil(textHeight + progressGap + progressHeight)
+            + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float left = getPaddingLeft() + (getWidth() - getPaddingLeft() - getPaddingRight() - textWidth) / 2f;
+        float baseline = getPaddingTop() + ascent;
+        float x = left;
+        for (int i = 0; i < text.length; i++) {
+            canvas.drawText(text, i, 1, x + cellWidths[i] / 2f, baseline, textPaint);
+            x += cellWidths[i];
+        }
+
+        float y = getPaddingTop() + textHeight + progressGap + progressHeight / 2f;
+        float start = left + progressHeight / 2f;
+        float end = left + textWidth - progressHeight / 2f;
+        canvas.drawLine(start, y, end, y, trackPaint);
+        if (progress > 0f) {
+            canvas.drawLine(start, y, start + (end - start) * progress, y, progressPaint);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.intervalbell.app;
+
+/**
+ * Small block-based DSP building blocks for tone renders: biquad filters,
+ * LFOs and gain stages, combined into per-tone {@link Chain}s.
+ * Every stage processes float blocks in place and carries its state from one
+ * block to the next, so a signal can be fed in blocks of any size with the
+ * same result. Nothing allocates after construction.
+ *
+ * Modulation runs at a control rate of one update per
+ * {@link #CONTROL_INTERVAL} samples; gain changes are ramped in between.
+ * A stage is not thread-safe; each render builds its own chain.
+ */
+public final class Dsp {
+    static final int CONTROL_INTERVAL = 32;
+
+    private static final double SAMPLE_RATE = ToneSynthesizer.SAMPLE_RATE;
+
+    private Dsp() {
+    }
+
+    /**
+     * One processing step of a chain.
+     */
+    public interface Stage {
+        /**
+         * Processes samples [offset, offset + count) of the buffer in place.
+         */
+        void process(float[] buffer, int offset, int count);
+    }
+
+    /**
+     * Stages applied one after the other.
+     */
+    public static final class Chain implements Stage {
+        private final Stage[] stages;
+
+        public Chain(Stage... stages) {
+            this.stages = stages;
+        }
+
+        @Override
+        public void process(float[] buffer, int offset, int count) {
+            for (Stage stage : stages) {
+                stage.process(buffer, offset, count);
+            }
+        }
+    }
+
+    /**
+     * Sine low-frequency oscillator for modulating other stages. Its value is
+     * taken once per control interval, so it costs one sine per interval.
+     */
+    public static final class Lfo {
+        private final double step;
+        private double phase;
+
+        /**
+         * @param rateHz Oscillation rate
+         * @param phase Starting phase in radians; 0 starts at the middle, rising
+         */
+        public Lfo(double rateHz, double phase) {
+            this.step = 2.0 * Math.PI * rateHz / SAMPLE_RATE;
+            this.phase = phase;
+        }
+
+        /**
+         * @return The current value in [0, 1], after which the LFO moves on by {@code samples}
+         */
+        public double next(int samples) {
+            double value = 0.5 + 0.5 * Math.sin(phase);
+            phase += step * samples;
+            if (phase > 2.0 * Math.PI) {
+                phase -= 2.0 * Math.PI;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Second-order IIR filter with RBJ cookbook coefficients, in transposed
+     * direct form II. The cutoff can sweep with an {@link Lfo} on an
+     * exponential scale, between two frequencies.
+     */
+    public static final class Biquad implements Stage {
+        private static final int LOW_PASS = 0;
+        private static final int HIGH_PASS = 1;
+        private static final int BAND_PASS = 2;
+
+        private final int kind;
+        private final double q;
+
+        private double b0;
+        private double b1;
+        private double b2;
+        private double a1;
+        private double a2;
+        private double z1;
+        private double z2;
+
+        private Lfo lfo;
+        private double minHz;
+        private double maxHz;
+        private int untilUpdate;
+
+        private Biquad(int kind, double frequency, double q) {
+            this.kind = kind;
+            this.q = q;
+            setFrequency(frequency);
+        }
+
+        public static Biquad lowPass(double cutoffHz, double q) {
+            return new Biquad(LOW_PASS, cutoffHz, q);
+        }
+
+        public static Biquad highPass(double cutoffHz, double q) {
+            return new Biquad(HIGH_PASS, cutoffHz, q);
+        }
+
+        /**
+         * Band-pass with 0 dB gain at the center.
+         */
+        public static Biquad bandPass(double centerHz, double q) {
+            return new Biquad(BAND_PASS, centerHz, q);
+        }
+
+        /**
+         * Sweeps the cutoff or center between two frequencies, following the LFO.
+         * @return This filter
+         */
+        public Biquad modulate(Lfo lfo, double minHz, double maxHz) {
+            this.lfo = lfo;
+            this.minHz = minHz;
+            this.maxHz = maxHz;
+            untilUpdate = 0;
+            return this;
+        }
+
+        /**
+         * Sets the cutoff or center frequency, keeping the filter state.
+         */
+        public void setFrequency(double frequency) {
+            // Keep clear of Nyquist, where the coefficients degenerate
+            double w0 = 2.0 * Math.PI * Math.min(frequency, 0.49 * SAMPLE_RATE) / SAMPLE_RATE;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2.0 * q);
+            double a0 = 1.0 + alpha;
+            switch (kind) {
+                case LOW_PASS:
+                    b0 = (1.0 - cos) / 2.0;
+                    b1 = 1.0 - cos;
+                    b2 = b0;
+                    break;
+                case HIGH_PASS:
+                    b0 = (1.0 + cos) / 2.0;
+                    b1 = -(1.0 + cos);
+                    b2 = b0;
+                    break;
+                default:
+                    b0 = alpha;
+                    b1 = 0.0;
+                    b2 = -alpha;
+                    break;
+            }
+            b0 /= a0;
+            b1 /= a0;
+            b2 /= a0;
+            a1 = -2.0 * cos / a0;
+            a2 = (1.0 - alpha) / a0;
+        }
+
+        @Override
+        public void process(float[] buffer, int offset, int count) {
+            int end = offset + count;
+            int i = offset;
+            while (i < end) {
+                int run = end - i;
+                if (lfo != null) {
+                    if (untilUpdate == 0) {
+                        double position = lfo.next(CONTROL_INTERVAL);
+                        setFrequency(minHz * Math.pow(maxHz / minHz, position));
+                        untilUpdate = CONTROL_INTERVAL;
+                    }
+                    run = Math.min(run, untilUpdate);
+                    untilUpdate -= run;
+                }
+                double s1 = z1;
+                double s2 = z2;
+                for (int stop = i + run; i < stop; i++) {
+                    double x = buffer[i];
+                    double y = b0 * x + s1;
+                    s1 = b1 * x - a1 * y + s2;
+                    s2 = b2 * x - a2 * y;
+                    buffer[i] = (float) y;
+                }
+                z1 = s1;
+                z2 = s2;
+            }
+        }
+    }
+
+    /**
+     * Gain stage, optionally with tremolo from an {@link Lfo}. The gain is
+     * ramped linearly over each control interval, so changes do not click.
+     */
+    public static final class Gain implements Stage {
+        private double gain;
+        private double current;
+        private double step;
+
+        private Lfo lfo;
+        private double depth;
+        private int untilUpdate;
+
+        public Gain(double gain) {
+            this.gain = gain;
+            this.current = gain;
+        }
+
+        /**
+         * Modulates the gain down by up to {@code depth} of itself, following the LFO.
+         * @return This stage
+         */
+        public Gain modulate(Lfo lfo, double depth) {
+            this.lfo = lfo;
+            this.depth = depth;
+            untilUpdate = 0;
+            return this;
+        }
+
+        /**
+         * Sets the gain; it is reached by the end of the next control interval.
+         */
+        public void setGain(double gain) {
+            this.gain = gain;
+            untilUpdate = 0;
+        }
+
+        @Override
+        public void process(float[] buffer, int offset, int count) {
+            int end = offset + count;
+            int i = offset;
+            while (i < end) {
+                if (untilUpdate == 0) {
+                    double target = gain;
+                    if (lfo != null) {
+                        target *= 1.0 - depth + depth * lfo.next(CONTROL_INTERVAL);
+                    }
+                    step = (target - current) / CONTROL_INTERVAL;
+                    untilUpdate = CONTROL_INTERVAL;
+                }
+                int run = Math.min(end - i, untilUpdate);
+                untilUpdate -= run;
+                double value = current;
+                for (int stop = i + run; i < stop; i++) {
+                    value += step;
+                    buffer[i] *= (float) value;
+                }
+                current = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.intervalbell.app;
+
+/**
+ * In-place iterative radix-2 FFT of a fixed size.
+ * Twiddle factors and the bit-reversal permutation are computed once, so a
+ * transform allocates nothing. Not thread-safe; use one instance per thread.
+ */
+public final class Fft {
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReversed;
+
+    /**
+     * @param size Transform length; must be a power of two
+     */
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        }
+        this.size = size;
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+        bitReversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            bitReversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Forward transform, replacing the input with its spectrum.
+     * @param re Real parts, {@link #getSize()} long
+     * @param im Imaginary parts, {@link #getSize()} long
+     */
+    public void transform(float[] re, float[] im) {
+        for (int i = 0; i < size; i++) {
+            int j = bitReversed[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int half = 1; half < size; half <<= 1) {
+            int stride = size / (half << 1);
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * stride];
+                    float wi = sin[k * stride];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Inverse transform, replacing the spectrum with the signal, scaled by
+     * 1/{@link #getSize()} so that it undoes {@link #transform}. Uses the forward
+     * transform on the conjugate. Two real signals can be made at once by
+     * packing the spectrum of the second into the imaginary part as i*X.
+     */
+    public void inverse(float[] re, float[] im) {
+        for (int i = 0; i < size; i++) {
+            im[i] = -im[i];
+        }
+        transform(re, im);
+        float scale = 1f / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= -scale;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.intervalbell.app;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+
+/**
+ * {@link IntervalScheduler.Clock} on the main thread: time is
+ * {@link SystemClock#elapsedRealtime()}, like the saved schedule, and tasks
+ * are posted to the main looper. Posted delays pause while the device
+ * sleeps, so a task can run late but never early on this clock.
+ *
+ * Wakeups are also set as exact alarms that fire while idle, so they run
+ * even if the device has suspended; whichever of the post and the alarm
+ * comes first runs the task. Without the exact alarm permission the alarm
+ * is inexact, and the system may defer it by minutes.
+ *
+ * The alarms go to {@link BellActionReceiver}, declared in the manifest, so
+ * one still arrives after the process has died; {@link #onWakeupAlarm} then
+ * finds no clock waiting for it.
+ */
+final class HandlerClock implements IntervalScheduler.Clock {
+    private static final String TAG = "HandlerClock";
+    private static final String EXTRA_WAKEUP_ID = "wakeup_id";
+
+    // Pending wakeups of every clock in the process by alarm id; main thread only
+    private static final HashMap<Integer, Wakeup> pendingAlarms = new HashMap<>();
+    // Zero until a clock in this process sets an alarm
+    private static int nextId;
+
+    /**
+     * A task waiting on both a post and an alarm; runs once.
+     */
+    private static final class Wakeup implements Runnable {
+        final HandlerClock clock;
+        final Runnable task;
+        final int id;
+        final PendingIntent alarm;
+
+        Wakeup(HandlerClock clock, Runnable task, int id, PendingIntent alarm) {
+            this.clock = clock;
+            this.task = task;
+            this.id = id;
+            this.alarm = alarm;
+        }
+
+        @Override
+        public void run() {
+            if (clock.wakeups.get(task) != this) {
+                return;
+            }
+            clock.remove(this);
+            task.run();
+        }
+    }
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final HashMap<Runnable, Wakeup> wakeups = new HashMap<>();
+
+    HandlerClock(Context context) {
+        this.context = context.getApplicationContext();
+        alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void scheduleWakeup(Runnable task, long delayMs) {
+        cancelWakeup(task);
+        int id = nextId++;
+        Intent intent = new Intent(context, BellActionReceiver.class)
+            .setAction(BellActionReceiver.ACTION_WAKEUP)
+            .putExtra(EXTRA_WAKEUP_ID, id);
+        PendingIntent alarm = PendingIntent.getBroadcast(context, id, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        long triggerAtMs = SystemClock.elapsedRealtime() + delayMs;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMs, alarm);
+        } else {
+            Log.w(TAG, "Exact alarms not allowed; a sleeping device may wake late for the bell");
+            alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAtMs, alarm);
+        }
+        Wakeup wakeup = new Wakeup(this, task, id, alarm);
+        wakeups.put(task, wakeup);
+        pendingAlarms.put(id, wakeup);
+        handler.postDelayed(wakeup, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+        cancelWakeup(task);
+    }
+
+    private void cancelWakeup(Runnable task) {
+        Wakeup wakeup = wakeups.get(task);
+        if (wakeup != null) {
+            remove(wakeup);
+        }
+    }
+
+    /**
+     * Drops a wakeup's post and alarm.
+     */
+    private void remove(Wakeup wakeup) {
+        wakeups.remove(wakeup.task);
+        pendingAlarms.remove(wakeup.id);
+        handler.removeCallbacks(wakeup);
+        alarmManager.cancel(wakeup.alarm);
+    }
+
+    /**
+     * Runs the task of a wakeup alarm, unless its post ran it already. Call on
+     * the main thread.
+     * @return false if no clock in this process has set an alarm, i.e. the
+     *         process that set this one has died and its schedule with it
+     */
+    static boolean onWakeupAlarm(Intent intent) {
+        Wakeup wakeup = pendingAlarms.get(intent.getIntExtra(EXTRA_WAKEUP_ID, -1));
+        if (wakeup != null) {
+            wakeup.run();
+        }
+        return nextId > 0;
+    }
+}
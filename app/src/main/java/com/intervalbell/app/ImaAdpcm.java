@@ -0,0 +1,166 @@
+package com.intervalbell.app;
+
+/**
+ * IMA-ADPCM codec for cached tones: 4 bits per sample, about a quarter of the
+ * memory of 16-bit PCM. Samples are coded in independent blocks of
+ * {@link #BLOCK_SAMPLES}; each block header keeps its first sample exactly plus
+ * the step index, so any block decodes on its own, straight into a mix buffer.
+ */
+public final class ImaAdpcm {
+    public static final int BLOCK_SAMPLES = 256;
+
+    // First sample is stored in the header, the other 255 take one nibble each
+    private static final int BLOCK_BYTES = BLOCK_SAMPLES / 2;
+
+    private static final int[] INDEX_TABLE = {
+        -1, -1, -1, -1, 2, 4, 6, 8,
+        -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+        19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+        130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+        876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+        5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    /**
+     * A compressed clip. Immutable once encoded.
+     */
+    public static final class Clip {
+        final int length;
+        final short[] blockFirstSamples;
+        final byte[] blockStepIndices;
+        final byte[] data;
+
+        private Clip(int length) {
+            int blocks = (length + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES;
+            this.length = length;
+            this.blockFirstSamples = new short[blocks];
+            this.blockStepIndices = new byte[blocks];
+            this.data = new byte[blocks * BLOCK_BYTES];
+        }
+
+        /**
+         * @return Number of samples
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public int getSizeInBytes() {
+            return data.length + blockFirstSamples.length * 3;
+        }
+    }
+
+    private ImaAdpcm() {
+    }
+
+    public static Clip encode(short[] samples) {
+        Clip clip = new Clip(samples.length);
+        int stepIndex = 0;
+        for (int block = 0; block < clip.blockFirstSamples.length; block++) {
+            int start = block * BLOCK_SAMPLES;
+            int end = Math.min(samples.length, start + BLOCK_SAMPLES);
+            int predictor = samples[start];
+            clip.blockFirstSamples[block] = samples[start];
+            clip.blockStepIndices[block] = (byte) stepIndex;
+
+            int byteOffset = block * BLOCK_BYTES;
+            for (int i = start + 1; i < end; i++) {
+                int step = STEP_TABLE[stepIndex];
+                int diff = samples[i] - predictor;
+                int code = 0;
+                if (diff < 0) {
+                    code = 8;
+                    diff = -diff;
+                }
+                // Quantize to 3 magnitude bits; the delta mirrors the decoder exactly
+                int delta = step >> 3;
+                if (diff >= step) {
+                    code |= 4;
+                    diff -= step;
+                    delta += step;
+                }
+                if (diff >= step >> 1) {
+                    code |= 2;
+                    diff -= step >> 1;
+                    delta += step >> 1;
+                }
+                if (diff >= step >> 2) {
+                    code |= 1;
+                    delta += step >> 2;
+                }
+                predictor = clampSample((code & 8) != 0 ? predictor - delta : predictor + delta);
+                stepIndex = clampIndex(stepIndex + INDEX_TABLE[code]);
+
+                int nibble = i - start - 1;
+                clip.data[byteOffset + (nibble >> 1)] |= (byte) ((nibble & 1) == 0 ? code : code << 4);
+            }
+        }
+        return clip;
+    }
+
+    /**
+     * Decodes one block.
+     * @param out Receives up to {@link #BLOCK_SAMPLES} samples
+     * @return Number of samples decoded
+     */
+    public static int decodeBlock(Clip clip, int block, short[] out) {
+        int start = block * BLOCK_SAMPLES;
+        int count = Math.min(BLOCK_SAMPLES, clip.length - start);
+        int predictor = clip.blockFirstSamples[block];
+        int stepIndex = clip.blockStepIndices[block];
+        out[0] = (short) predictor;
+
+        byte[] data = clip.data;
+        int byteOffset = block * BLOCK_BYTES;
+        for (int i = 1; i < count; i++) {
+            int nibble = i - 1;
+            int packed = data[byteOffset + (nibble >> 1)];
+            int code = (nibble & 1) == 0 ? packed & 0x0f : (packed >> 4) & 0x0f;
+
+            int step = STEP_TABLE[stepIndex];
+            int delta = step >> 3;
+            if ((code & 4) != 0) {
+                delta += step;
+            }
+            if ((code & 2) != 0) {
+                delta += step >> 1;
+            }
+            if ((code & 1) != 0) {
+                delta += step >> 2;
+            }
+            predictor = clampSample((code & 8) != 0 ? predictor - delta : predictor + delta);
+            stepIndex = clampIndex(stepIndex + INDEX_TABLE[code]);
+            out[i] = (short) predictor;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes a whole clip.
+     */
+    public static short[] decode(Clip clip) {
+        short[] samples = new short[clip.length];
+        short[] block = new short[BLOCK_SAMPLES];
+        for (int b = 0; b < clip.blockFirstSamples.length; b++) {
+            int count = decodeBlock(clip, b, block);
+            System.arraycopy(block, 0, samples, b * BLOCK_SAMPLES, count);
+        }
+        return samples;
+    }
+
+    private static int clampSample(int value) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static int clampIndex(int index) {
+        return Math.max(0, Math.min(STEP_TABLE.length - 1, index));
+    }
+}
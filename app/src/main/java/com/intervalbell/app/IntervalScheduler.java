@@ -0,0 +1,175 @@
+package com.intervalbell.app;
+
+/**
+ * Schedules the bells of a running interval: it gets each bell ready a little
+ * ahead of its deadline and rings it at the deadline, then moves on to the
+ * next. Deadlines lie on the grid of the anchor plus whole intervals, and each
+ * is computed from the clock rather than from the previous callback, so late
+ * callbacks do not add up to drift. A callback late by more than an interval
+ * skips the bells it missed rather than ringing them late.
+ *
+ * Only the prepare callback wakes the device; the listener keeps it awake from
+ * there until the bell, which is posted once prepared, so its delay does not
+ * include time asleep. One wakeup per bell keeps within what the system
+ * allows while idle.
+ *
+ * Time and delayed callbacks come from a {@link Clock}, so the same logic runs
+ * on the main thread and against a simulated clock in tests. Not thread-safe;
+ * call it on the thread the clock runs callbacks on.
+ */
+public final class IntervalScheduler {
+    /**
+     * Time source and delayed callbacks.
+     */
+    public interface Clock {
+        /**
+         * @return Current time in milliseconds, on the clock of the anchor
+         */
+        long now();
+
+        /**
+         * Runs a task once, after a delay.
+         */
+        void schedule(Runnable task, long delayMs);
+
+        /**
+         * Runs a task once, after a delay, waking the device for it if it
+         * sleeps. While the device is idle the system may still defer it.
+         */
+        void scheduleWakeup(Runnable task, long delayMs);
+
+        /**
+         * Cancels a task that has not run yet.
+         */
+        void cancel(Runnable task);
+    }
+
+    /**
+     * Receives the bells as they come due.
+     */
+    public interface Listener {
+        /**
+         * The next deadline is set, after starting or after a bell.
+         */
+        void onNextBell(long deadlineMs);
+
+        /**
+         * The next bell is due within the prepare time; get it ready.
+         * @param millisUntilBell Time left until its deadline, 0 if already due
+         */
+        void onPrepare(long millisUntilBell);
+
+        /**
+         * A bell is due; ring it.
+         * @param deadlineMs When it was due
+         */
+        void onBell(long deadlineMs);
+    }
+
+    private final Clock clock;
+    private final long prepareAheadMs;
+    private final Listener listener;
+    private final Runnable prepareTask = this::prepare;
+    private final Runnable bellTask = this::ring;
+
+    private boolean running;
+    private long anchorMs;
+    private long intervalMs;
+    private long deadlineMs;
+    private boolean prepared;
+
+    /**
+     * @param prepareAheadMs How long before each deadline {@link Listener#onPrepare} is called
+     */
+    public IntervalScheduler(Clock clock, long prepareAheadMs, Listener listener) {
+        this.clock = clock;
+        this.prepareAheadMs = prepareAheadMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the time left until the next bell on a grid. Bells missed while
+     * nothing was running are skipped rather than rung late.
+     * @return Milliseconds until the next bell, in (0, interval]
+     */
+    public static long getMillisUntilNextBell(long anchorMs, long intervalMs, long nowMs) {
+        long elapsed = Math.max(0, nowMs - anchorMs);
+        return intervalMs - elapsed % intervalMs;
+    }
+
+    /**
+     * Starts ringing on the grid of an anchor, replacing any running schedule.
+     * The first bell is the next grid point after now.
+     */
+    public void start(long anchorMs, long intervalMs) {
+        stop();
+        this.anchorMs = anchorMs;
+        this.intervalMs = intervalMs;
+        running = true;
+        scheduleAfter(clock.now());
+    }
+
+    /**
+     * Stops ringing. Nothing is called after this returns.
+     */
+    public void stop() {
+        running = false;
+        clock.cancel(prepareTask);
+        clock.cancel(bellTask);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return Deadline of the next bell; only valid while running
+     */
+    public long getNextDeadline() {
+        return deadlineMs;
+    }
+
+    /**
+     * Sets the first deadline on the grid after a time and schedules it.
+     */
+    private void scheduleAfter(long afterMs) {
+        long now = clock.now();
+        deadlineMs = afterMs + getMillisUntilNextBell(anchorMs, intervalMs, afterMs);
+        prepared = false;
+        listener.onNextBell(deadlineMs);
+        long untilBell = deadlineMs - now;
+        if (untilBell <= prepareAheadMs) {
+            prepare();
+        } else {
+            clock.scheduleWakeup(prepareTask, untilBell - prepareAheadMs);
+        }
+    }
+
+    private void prepare() {
+        if (!running || prepared) {
+            return;
+        }
+        prepared = true;
+        listener.onPrepare(Math.max(0, deadlineMs - clock.now()));
+        if (running) {
+            clock.schedule(bellTask, Math.max(0, deadlineMs - clock.now()));
+        }
+    }
+
+    private void ring() {
+        if (!running) {
+            return;
+        }
+        long now = clock.now();
+        if (now < deadlineMs) {
+            // Early on this clock: wait for the deadline rather than ring twice for it
+            clock.schedule(bellTask, deadlineMs - now);
+            return;
+        }
+        long rung = deadlineMs;
+        listener.onBell(rung);
+        if (running) {
+            scheduleAfter(Math.max(clock.now(), rung));
+        }
+    }
+}
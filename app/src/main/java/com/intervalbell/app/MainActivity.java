@@ -1,17 +1,23 @@
 package com.intervalbell.app;
 
 import android.Manifest;
+import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.CountDownTimer;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.GridLayout;
 import android.widget.LinearLayout;
-import android.widget.Spinner;
+import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
@@ -20,9 +26,18 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -32,15 +47,49 @@ public class MainActivity extends AppCompatActivity {
     private LinearLayout timeDisplayLayout;
     private GridLayout numericKeypad;
     private LinearLayout soundSelectionLayout;
-    private Spinner soundSpinner;
+    private RecyclerView soundPicker;
+    private TonePickerAdapter tonePickerAdapter;
     private Button previewButton;
     private Button startButton;
     private Button stopButton;
-    private TextView timerText;
+    private CountdownView countdownView;
     private TextView statusText;
-    private CountDownTimer countDownTimer;
+    // Rings the bells of the running schedule, except in metronome mode
+    private IntervalScheduler scheduler;
     private boolean isRunning = false;
-    private ToneSynthesizer toneSynth;
+    // The running schedule, saved on every change; null when stopped
+    private TimerSnapshot timerSnapshot;
+    // Follows the saved schedule when it is stopped or skipped elsewhere, e.g. from the widget
+    private final SharedPreferences.OnSharedPreferenceChangeListener snapshotListener =
+        this::onSnapshotChanged;
+    private final Runnable hideStatusText = () -> {
+        long cpuStart = SessionStats.begin();
+        statusText.setVisibility(View.INVISIBLE);
+        SessionStats.end(SessionStats.Stage.UI_TICK, cpuStart);
+    };
+    // Keeps the CPU up from preparing the next bell until it has rung
+    private PowerManager.WakeLock bellWakeLock;
+    // Created on first use, which can be a thumbnail render off the main thread
+    private volatile ToneSynthesizer toneSynth;
+    private final Object toneSynthLock = new Object();
+    
+    // Tone adjustment UI elements
+    private LinearLayout toneParamsLayout;
+    private SeekBar pitchSeekBar;
+    private SeekBar decaySeekBar;
+    private SeekBar brightnessSeekBar;
+    private TextView pitchValue;
+    private TextView decayValue;
+    private TextView brightnessValue;
+    private CheckBox compressTonesCheckBox;
+    private CheckBox roomResonanceCheckBox;
+    private CheckBox physicalModelsCheckBox;
+    private CheckBox metronomeCheckBox;
+    
+    // Saved per-tone adjustments and the debounced slider preview
+    private SharedPreferences preferences;
+    private TonePreviewer tonePreviewer;
+    private ToneParams toneParams = ToneParams.DEFAULT;
     
     // Recording UI elements
     private LinearLayout recordingLayout;
@@ -48,26 +97,70 @@ public class MainActivity extends AppCompatActivity {
     private TextView recordingStatusText;
     private Button recordButton;
     private Button deleteRecordingButton;
+    private Button importButton;
     
-    // Timer card
+    // Timer card, with the spectrum of the ringing bell
     private View timerCard;
+    private SpectrumView spectrumView;
     
-    // Audio recorder for custom recordings
+    // Library of recorded and imported sounds, loaded and imported one at a time
+    private SoundLibrary soundLibrary;
+    private final ExecutorService soundLoader = Executors.newSingleThreadExecutor();
+    private List<SoundLibrary.Entry> librarySounds = new ArrayList<>();
+
+    // Audio recorder for custom recordings; created on first use
     private AudioRecorder audioRecorder;
     
     // Permission request launcher
     private ActivityResultLauncher<String> requestPermissionLauncher;
+    private ActivityResultLauncher<String> notificationPermissionLauncher;
+
+    // Audio file picker for imports
+    private ActivityResultLauncher<String> importLauncher;
     
-    // Selected bell tone
+    // Selected bell tone; CUSTOM_RECORDING with selectedSound set for library sounds
     private BellTone selectedTone = BellTone.ZEN_BOWL;
+    private SoundLibrary.Entry selectedSound;
+    // Library sound of a restored schedule, selected once the library is loaded
+    private String restoredSoundId;
 
-    // Store the entered digits (max 6 digits for HH:MM:SS)
+    // Store the entered digits (max 6 digits for HH:MM:SS, or MM:SS.cc in metronome mode)
     private StringBuilder enteredDigits = new StringBuilder();
     private static final int MAX_DIGITS = 6;
+    // Whether intervals are entered to the hundredth and rung by the sequencer
+    private boolean metronomeMode;
+
+    // Shortest metronome interval; shorter ones would only ring over themselves
+    private static final long MIN_METRONOME_INTERVAL_MS = 100;
+
+    // The next bell is rendered and the output primed this long before it is due
+    static final long PREPARE_AHEAD_MS = 3000;
+
+    // Extra time the output stays primed past the deadline, covering a late bell callback
+    static final long PRIME_MARGIN_MS = 1000;
+
+    // How long the bell status shows after a ring
+    private static final long STATUS_SHOWN_MS = 1000;
+
+    private static final String TAG = "MainActivity";
+    static final String PREFS_NAME = "interval_bell";
+    static final String ACTION_START = "com.intervalbell.app.action.START";
+    private static final String PREF_COMPRESS_TONES = "compress_tones";
+    private static final String PREF_ROOM_RESONANCE = "room_resonance";
+    private static final String PREF_PHYSICAL_MODELS = "physical_models";
+    private static final String PREF_METRONOME = "metronome_mode";
+    private static final String PREF_LAST_INTERVAL = "last_interval_ms";
+    private static final String SESSION_LOG_FILENAME = "sessions.tsv";
+
+    // Startup timing in uptime milliseconds, -1 until reached
+    private long createdAtMs;
+    private long initialDisplayMs = -1;
+    private long fullyDrawnMs = -1;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAtMs = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_main);
 
         // Initialize views
@@ -77,40 +170,72 @@ public class MainActivity extends AppCompatActivity {
         timeDisplayLayout = findViewById(R.id.timeDisplayLayout);
         numericKeypad = findViewById(R.id.numericKeypad);
         soundSelectionLayout = findViewById(R.id.soundSelectionLayout);
-        soundSpinner = findViewById(R.id.soundSpinner);
+        soundPicker = findViewById(R.id.soundPicker);
         previewButton = findViewById(R.id.previewButton);
         startButton = findViewById(R.id.startButton);
         stopButton = findViewById(R.id.stopButton);
-        timerText = findViewById(R.id.timerText);
+        countdownView = findViewById(R.id.countdownView);
         statusText = findViewById(R.id.statusText);
         
+        // Initialize tone adjustment views
+        toneParamsLayout = findViewById(R.id.toneParamsLayout);
+        pitchSeekBar = findViewById(R.id.pitchSeekBar);
+        decaySeekBar = findViewById(R.id.decaySeekBar);
+        brightnessSeekBar = findViewById(R.id.brightnessSeekBar);
+        compressTonesCheckBox = findViewById(R.id.compressTonesCheckBox);
+        roomResonanceCheckBox = findViewById(R.id.roomResonanceCheckBox);
+        physicalModelsCheckBox = findViewById(R.id.physicalModelsCheckBox);
+        metronomeCheckBox = findViewById(R.id.metronomeCheckBox);
+        pitchValue = findViewById(R.id.pitchValue);
+        decayValue = findViewById(R.id.decayValue);
+        brightnessValue = findViewById(R.id.brightnessValue);
+        
         // Initialize recording views
         recordingLayout = findViewById(R.id.recordingLayout);
         recordingCard = findViewById(R.id.recordingCard);
         recordingStatusText = findViewById(R.id.recordingStatusText);
         recordButton = findViewById(R.id.recordButton);
         deleteRecordingButton = findViewById(R.id.deleteRecordingButton);
+        importButton = findViewById(R.id.importButton);
         
         // Initialize timer card
         timerCard = findViewById(R.id.timerCard);
+        spectrumView = findViewById(R.id.spectrumView);
 
-        // Create synthesizer for high-quality tone playback
-        toneSynth = new ToneSynthesizer();
+        // The synthesizer is created on first use, at the latest after the first frame
+        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        bellWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "IntervalBell:bell");
+        bellWakeLock.setReferenceCounted(false);
+        scheduler = createScheduler();
         
-        // Initialize audio recorder
-        audioRecorder = new AudioRecorder(this);
+        // The library index is loaded after the first frame, see onFirstFrame
+        soundLibrary = new SoundLibrary(this);
         
-        // Setup permission request launcher
+        // Setup permission request launcher and import picker
         setupPermissionLauncher();
+        setupImportLauncher();
 
         // Setup numeric keypad buttons
         setupNumericKeypad();
         
-        // Setup sound spinner with bell tones
-        setupSoundSpinner();
+        // A schedule that outlived the previous activity or process picks up where it was
+        TimerSnapshot snapshot = TimerSnapshot.load(preferences);
+        if (snapshot != null) {
+            selectedTone = snapshot.tone;
+            restoredSoundId = snapshot.soundId;
+        }
+        setupMetronomeMode(snapshot != null
+            ? snapshot.sequenced : preferences.getBoolean(PREF_METRONOME, false));
+        
+        // Setup sound picker with bell tones
+        setupSoundPicker();
         
         // Setup recording buttons
         setupRecordingButtons();
+        
+        // Setup pitch, decay and brightness sliders
+        setupToneParams();
 
         // Preview button click listener
         previewButton.setOnClickListener(new View.OnClickListener() {
@@ -136,72 +261,290 @@ public class MainActivity extends AppCompatActivity {
 
         // Initialize display
         updateTimeDisplay();
+        if (snapshot != null) {
+            resumeInterval(snapshot);
+        }
+        preferences.registerOnSharedPreferenceChangeListener(snapshotListener);
+        if (savedInstanceState == null) {
+            handleIntent(getIntent());
+        }
         
-        // Update recording status on startup
-        updateRecordingStatus();
+        // Everything the first frame does not need runs once it is drawn
+        Choreographer.getInstance().postFrameCallback(
+            frameTimeNanos -> getWindow().getDecorView().post(this::onFirstFrame));
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        handleIntent(intent);
     }
 
-    private void setupSoundSpinner() {
-        // Create list of display names for the spinner
-        final BellTone[] tones = BellTone.values();
-        List<String> toneNames = new ArrayList<>();
-        for (BellTone tone : tones) {
-            toneNames.add(tone.getDisplayName(this));
+    /**
+     * Handles Start from the widget, with the entered or else the last interval.
+     */
+    private void handleIntent(Intent intent) {
+        if (intent == null || !ACTION_START.equals(intent.getAction()) || isRunning) {
+            return;
         }
+        if (getIntervalMs() <= 0) {
+            setEnteredInterval(preferences.getLong(PREF_LAST_INTERVAL, 0));
+        }
+        startInterval();
+    }
 
-        // Create custom adapter with larger text
-        ArrayAdapter<String> adapter = new ArrayAdapter<String>(
-                this,
-                android.R.layout.simple_spinner_item,
-                toneNames
-        ) {
-            @NonNull
-            @Override
-            public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-                View view = super.getView(position, convertView, parent);
-                TextView textView = (TextView) view;
-                textView.setTextSize(16);
-                return view;
+    /**
+     * Runs right after the first frame: records time-to-initial-display and
+     * starts the deferred startup work.
+     */
+    private void onFirstFrame() {
+        initialDisplayMs = SystemClock.uptimeMillis();
+        Log.i(TAG, "Initial display: " + formatStartupTimes(initialDisplayMs));
+
+        // Create the synthesizer and warm the selected tone, so the first preview does not wait
+        getToneSynth();
+        if (selectedTone.getToneType() != null) {
+            getToneSynth().preloadTone(selectedTone.getToneType(), toneParams);
+        }
+
+        // Reading the library index touches the disk; keep it off the main thread
+        soundLoader.execute(() -> {
+            List<SoundLibrary.Entry> entries = soundLibrary.getEntries();
+            runOnUiThread(() -> {
+                if (restoredSoundId != null) {
+                    for (SoundLibrary.Entry entry : entries) {
+                        if (entry.id.equals(restoredSoundId)) {
+                            selectedSound = entry;
+                        }
+                    }
+                    restoredSoundId = null;
+                    if (isRunning && timerSnapshot.sequenced && selectedSound != null) {
+                        // The sequence of a restored schedule has been waiting for its sound
+                        sequenceLibrarySound(selectedSound);
+                    }
+                }
+                if (!entries.isEmpty()) {
+                    librarySounds = entries;
+                    updateSoundPicker();
+                }
+                fullyDrawnMs = SystemClock.uptimeMillis();
+                reportFullyDrawn();
+                Log.i(TAG, "Fully drawn: " + formatStartupTimes(fullyDrawnMs));
+            });
+        });
+    }
+
+    private String formatStartupTimes(long uptimeMs) {
+        return String.format(Locale.US, "%d ms after onCreate, %d ms after process start",
+            uptimeMs - createdAtMs, uptimeMs - Process.getStartUptimeMillis());
+    }
+
+    /**
+     * Gets the synthesizer, creating it with the saved settings on first use.
+     * Safe on any thread; the spectrum view is hooked up on the main thread.
+     */
+    private ToneSynthesizer getToneSynth() {
+        ToneSynthesizer synth = toneSynth;
+        if (synth != null) {
+            return synth;
+        }
+        synchronized (toneSynthLock) {
+            if (toneSynth == null) {
+                synth = new ToneSynthesizer();
+                synth.setCompressTones(preferences.getBoolean(PREF_COMPRESS_TONES, false));
+                synth.setResonance(preferences.getBoolean(PREF_ROOM_RESONANCE, false));
+                synth.setPhysicalModels(preferences.getBoolean(PREF_PHYSICAL_MODELS, false));
+                OutputTap tap = synth.getOutputTap();
+                spectrumView.post(() -> spectrumView.setTap(tap));
+                toneSynth = synth;
             }
+            return toneSynth;
+        }
+    }
 
-            @Override
-            public View getDropDownView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-                View view = super.getDropDownView(position, convertView, parent);
-                TextView textView = (TextView) view;
-                textView.setTextSize(16);
-                textView.setPadding(32, 24, 32, 24);
-                return view;
+    private TonePreviewer getTonePreviewer() {
+        if (tonePreviewer == null) {
+            tonePreviewer = new TonePreviewer(getToneSynth());
+        }
+        return tonePreviewer;
+    }
+
+    private AudioRecorder getAudioRecorder() {
+        if (audioRecorder == null) {
+            audioRecorder = new AudioRecorder(this, soundLibrary);
+        }
+        return audioRecorder;
+    }
+
+    private void setupSoundPicker() {
+        tonePickerAdapter = new TonePickerAdapter(
+            getResources().getDimensionPixelSize(R.dimen.tone_thumbnail_width),
+            getResources().getDimensionPixelSize(R.dimen.tone_thumbnail_height),
+            this::onSoundSelected);
+        soundPicker.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
+        soundPicker.setHasFixedSize(true);
+        soundPicker.setAdapter(tonePickerAdapter);
+        updateSoundPicker();
+    }
+
+    /**
+     * Rebuilds the picker entries from {@link #librarySounds} and the built-in tones,
+     * keeping the current selection.
+     */
+    private void updateSoundPicker() {
+        // Library sounds first, then the built-in tones
+        List<TonePickerAdapter.Item> items = new ArrayList<>();
+        for (SoundLibrary.Entry sound : librarySounds) {
+            items.add(new TonePickerAdapter.Item(
+                BellTone.CUSTOM_RECORDING.getEmoji() + " " + sound.name,
+                "sound:" + sound.id,
+                () -> soundLibrary.getPeaks(sound)));
+        }
+        for (BellTone tone : BellTone.values()) {
+            items.add(new TonePickerAdapter.Item(
+                tone.getDisplayName(this),
+                "tone:" + tone.name(),
+                tone.isCustomRecording() ? null : () -> tone.getPeaks(getToneSynth())));
+        }
+
+        int position = getPickerPosition(selectedTone, selectedSound);
+        tonePickerAdapter.setItems(items, position);
+        soundPicker.scrollToPosition(position);
+        onSoundSelected(position);
+    }
+
+    private void onSoundSelected(int position) {
+        if (position < librarySounds.size()) {
+            selectedTone = BellTone.CUSTOM_RECORDING;
+            selectedSound = librarySounds.get(position);
+            preloadSound(selectedSound);
+        } else {
+            selectedTone = BellTone.values()[position - librarySounds.size()];
+            selectedSound = null;
+        }
+        // Show/hide recording layout based on selection. While running, the timer
+        // card owns it: the deferred library load can select a sound after it is shown
+        if (!isRunning) {
+            if (selectedTone.isCustomRecording()) {
+                recordingCard.setVisibility(View.VISIBLE);
+                updateRecordingStatus();
+            } else {
+                recordingCard.setVisibility(View.GONE);
             }
-        };
+        }
+        updateToneParamsControls();
+    }
 
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        soundSpinner.setAdapter(adapter);
-        
-        // Default to first non-custom tone (ZEN_BOWL at index 1)
-        soundSpinner.setSelection(1);
+    private int getPickerPosition(BellTone tone, SoundLibrary.Entry sound) {
+        if (sound != null) {
+            for (int i = 0; i < librarySounds.size(); i++) {
+                if (librarySounds.get(i).id.equals(sound.id)) {
+                    return i;
+                }
+            }
+        }
+        return librarySounds.size() + tone.ordinal();
+    }
 
-        // Handle selection changes
-        soundSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+    /**
+     * Decodes a library sound into the PCM cache ahead of its first ring.
+     */
+    private void preloadSound(SoundLibrary.Entry sound) {
+        if (soundLibrary.peekSamples(sound) == null) {
+            soundLoader.execute(() -> soundLibrary.getSamples(sound));
+        }
+    }
+
+    private void setupToneParams() {
+        SeekBar.OnSeekBarChangeListener listener = new SeekBar.OnSeekBarChangeListener() {
             @Override
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                selectedTone = tones[position];
-                // Show/hide recording layout based on selection
-                if (selectedTone.isCustomRecording()) {
-                    recordingCard.setVisibility(View.VISIBLE);
-                    updateRecordingStatus();
-                } else {
-                    recordingCard.setVisibility(View.GONE);
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (!fromUser) {
+                    return;
+                }
+                ToneSynthesizer.ToneType type = selectedTone.getToneType();
+                if (type == null) {
+                    return;
                 }
+                toneParams = new ToneParams(
+                    ToneParams.MIN_PITCH + pitchSeekBar.getProgress(),
+                    ToneParams.MIN_DECAY + decaySeekBar.getProgress() * ToneParams.DECAY_STEP,
+                    ToneParams.MIN_BRIGHTNESS + brightnessSeekBar.getProgress() * ToneParams.BRIGHTNESS_STEP);
+                toneParams.save(preferences, type);
+                updateToneParamsLabels();
+                getTonePreviewer().request(type, toneParams);
             }
 
             @Override
-            public void onNothingSelected(AdapterView<?> parent) {
-                selectedTone = BellTone.ZEN_BOWL;
-                recordingCard.setVisibility(View.GONE);
+            public void onStartTrackingTouch(SeekBar seekBar) {}
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {}
+        };
+        pitchSeekBar.setOnSeekBarChangeListener(listener);
+        decaySeekBar.setOnSeekBarChangeListener(listener);
+        brightnessSeekBar.setOnSeekBarChangeListener(listener);
+        updateToneParamsControls();
+
+        // Raw vs IMA-ADPCM cached tones
+        compressTonesCheckBox.setChecked(preferences.getBoolean(PREF_COMPRESS_TONES, false));
+        compressTonesCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            getToneSynth().setCompressTones(checked);
+            preferences.edit().putBoolean(PREF_COMPRESS_TONES, checked).apply();
+        });
+
+        // Dry or convolved with a small room; each is cached on its own
+        roomResonanceCheckBox.setChecked(preferences.getBoolean(PREF_ROOM_RESONANCE, false));
+        roomResonanceCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            getToneSynth().setResonance(checked);
+            preferences.edit().putBoolean(PREF_ROOM_RESONANCE, checked).apply();
+            if (selectedTone.getToneType() != null) {
+                getToneSynth().preloadTone(selectedTone.getToneType(), toneParams);
+            }
+        });
+
+        // Waveguide models instead of summed partials for plucked and struck tones
+        physicalModelsCheckBox.setChecked(preferences.getBoolean(PREF_PHYSICAL_MODELS, false));
+        physicalModelsCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            getToneSynth().setPhysicalModels(checked);
+            preferences.edit().putBoolean(PREF_PHYSICAL_MODELS, checked).apply();
+            ToneSynthesizer.ToneType type = selectedTone.getToneType();
+            if (type != null && ToneSynthesizer.hasPhysicalModel(type)) {
+                getToneSynth().preloadTone(type, toneParams);
             }
         });
     }
 
+    /**
+     * Loads the saved adjustments of the selected tone into the sliders.
+     * Adjustments only apply to single synthesized tones.
+     */
+    private void updateToneParamsControls() {
+        if (tonePreviewer != null) {
+            tonePreviewer.cancel();
+        }
+        ToneSynthesizer.ToneType type = selectedTone.getToneType();
+        if (type == null) {
+            toneParams = ToneParams.DEFAULT;
+            toneParamsLayout.setVisibility(View.GONE);
+            return;
+        }
+        toneParams = ToneParams.load(preferences, type);
+        pitchSeekBar.setProgress(toneParams.pitchSemitones - ToneParams.MIN_PITCH);
+        decaySeekBar.setProgress((toneParams.decayPercent - ToneParams.MIN_DECAY) / ToneParams.DECAY_STEP);
+        brightnessSeekBar.setProgress(
+            (toneParams.brightnessPercent - ToneParams.MIN_BRIGHTNESS) / ToneParams.BRIGHTNESS_STEP);
+        updateToneParamsLabels();
+        toneParamsLayout.setVisibility(View.VISIBLE);
+    }
+
+    private void updateToneParamsLabels() {
+        pitchValue.setText(getString(R.string.pitch_value, toneParams.pitchSemitones));
+        decayValue.setText(getString(R.string.percent_value, toneParams.decayPercent));
+        brightnessValue.setText(getString(R.string.signed_percent_value, toneParams.brightnessPercent));
+    }
+
     private void setupNumericKeypad() {
         // Number buttons 1-9
         int[] buttonIds = {
@@ -300,7 +643,7 @@ public class MainActivity extends AppCompatActivity {
         secondsDisplay.setTextColor(seconds.equals("00") ? inactiveColor : activeColor);
     }
 
-    private long getIntervalInSeconds() {
+    private long getIntervalMs() {
         if (enteredDigits.length() == 0) {
             return 0;
         }
@@ -308,38 +651,156 @@ public class MainActivity extends AppCompatActivity {
         // Pad with zeros to get 6 digits
         String paddedDigits = String.format("%6s", enteredDigits.toString()).replace(' ', '0');
         
-        int hours = Integer.parseInt(paddedDigits.substring(0, 2));
-        int minutes = Integer.parseInt(paddedDigits.substring(2, 4));
-        int seconds = Integer.parseInt(paddedDigits.substring(4, 6));
+        int first = Integer.parseInt(paddedDigits.substring(0, 2));
+        int second = Integer.parseInt(paddedDigits.substring(2, 4));
+        int third = Integer.parseInt(paddedDigits.substring(4, 6));
 
-        return hours * 3600L + minutes * 60L + seconds;
+        if (metronomeMode) {
+            // Minutes, seconds and hundredths
+            return (first * 60L + second) * 1000 + third * 10L;
+        }
+        return (first * 3600L + second * 60L + third) * 1000;
+    }
+
+    private void setupMetronomeMode(boolean enabled) {
+        metronomeCheckBox.setChecked(enabled);
+        applyMetronomeMode(enabled);
+        metronomeCheckBox.setOnCheckedChangeListener((button, checked) -> {
+            // Keep the entered interval, as far as the other mode can show it
+            long intervalMs = getIntervalMs();
+            applyMetronomeMode(checked);
+            setEnteredInterval(intervalMs);
+            preferences.edit().putBoolean(PREF_METRONOME, checked).apply();
+        });
+    }
+
+    /**
+     * Switches the keypad display between HH:MM:SS and MM:SS.cc.
+     */
+    private void applyMetronomeMode(boolean enabled) {
+        metronomeMode = enabled;
+        ((TextView) findViewById(R.id.hoursLabel)).setText(
+            enabled ? R.string.minutes_label : R.string.hours_label);
+        ((TextView) findViewById(R.id.minutesLabel)).setText(
+            enabled ? R.string.seconds_label : R.string.minutes_label);
+        ((TextView) findViewById(R.id.secondsLabel)).setText(
+            enabled ? R.string.hundredths_label : R.string.seconds_label);
     }
 
     private void startInterval() {
         if (isRunning) return;
 
-        long intervalSeconds = getIntervalInSeconds();
-        if (intervalSeconds <= 0) {
+        long intervalMs = getIntervalMs();
+        if (intervalMs <= 0) {
             Toast.makeText(this, "Please enter a time interval", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (metronomeMode && intervalMs < MIN_METRONOME_INTERVAL_MS) {
+            Toast.makeText(this,
+                getString(R.string.metronome_interval_too_short,
+                    String.format(Locale.US, "%.2f", MIN_METRONOME_INTERVAL_MS / 1000.0)),
+                Toast.LENGTH_LONG).show();
+            return;
+        }
         
         // Check if using custom recording and validate minimum interval
         long minimumInterval = getMinimumIntervalSeconds();
-        if (minimumInterval > 0 && intervalSeconds < minimumInterval) {
+        if (minimumInterval > 0 && intervalMs < minimumInterval * 1000) {
             Toast.makeText(this, 
                 getString(R.string.interval_too_short, (int) minimumInterval), 
                 Toast.LENGTH_LONG).show();
             return;
         }
         
-        // If custom recording is selected but no recording exists, show error
-        if (selectedTone.isCustomRecording() && !audioRecorder.hasRecording()) {
+        // If custom recording is selected but no sound is chosen, show error
+        if (selectedTone.isCustomRecording() && selectedSound == null) {
             Toast.makeText(this, R.string.no_recording, Toast.LENGTH_SHORT).show();
             return;
         }
 
         isRunning = true;
+        SessionStats.start();
+        timerSnapshot = new TimerSnapshot(SystemClock.elapsedRealtime(), intervalMs,
+            selectedTone, selectedSound != null ? selectedSound.id : null, metronomeMode);
+        timerSnapshot.save(preferences);
+        preferences.edit().putLong(PREF_LAST_INTERVAL, intervalMs).apply();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                    != PackageManager.PERMISSION_GRANTED) {
+            // The notification is posted once granted
+            notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+        }
+        showTimerCard();
+        startTimer();
+        publishSchedule();
+    }
+
+    private void onSnapshotChanged(SharedPreferences prefs, String key) {
+        if (!TimerSnapshot.PREFS_KEY.equals(key) || !isRunning) {
+            return;
+        }
+        TimerSnapshot snapshot = TimerSnapshot.load(prefs);
+        if (snapshot == null) {
+            stopInterval();
+        } else if (snapshot.anchorElapsedMs != timerSnapshot.anchorElapsedMs) {
+            // Skipped: count down to the new schedule
+            timerSnapshot = snapshot;
+            cancelTimer();
+            startTimer();
+        }
+    }
+
+    /**
+     * Redraws the widget and the notification from the saved schedule.
+     */
+    private void publishSchedule() {
+        BellWidgetProvider.update(this);
+        BellNotification.update(this);
+    }
+
+    /**
+     * Shows an interval on the keypad display, as if it had been typed, in the
+     * current mode; parts it cannot show are dropped.
+     */
+    private void setEnteredInterval(long intervalMs) {
+        enteredDigits.setLength(0);
+        long digits;
+        if (metronomeMode) {
+            long hundredths = Math.min(intervalMs / 10, 99 * 6000 + 5999);
+            digits = hundredths / 6000 * 10000 + hundredths / 100 % 60 * 100 + hundredths % 100;
+        } else {
+            long seconds = Math.min(intervalMs / 1000, 99 * 3600 + 3599);
+            digits = seconds / 3600 * 10000 + seconds / 60 % 60 * 100 + seconds % 60;
+        }
+        if (digits > 0) {
+            enteredDigits.append(digits);
+        }
+        updateTimeDisplay();
+    }
+
+    /**
+     * Continues a saved schedule after the activity or the process was recreated.
+     * Bells that fell due in between are skipped.
+     */
+    private void resumeInterval(TimerSnapshot snapshot) {
+        isRunning = true;
+        timerSnapshot = snapshot;
+        // A session survives recreating the activity, but not the process
+        if (!SessionStats.isActive()) {
+            SessionStats.start();
+        }
+        setEnteredInterval(snapshot.intervalMs);
+        showTimerCard();
+        // Warm the tone now rather than at the deadline; library sounds are
+        // warmed when the restored sound is selected
+        selectedTone.preload(getToneSynth(), toneParams);
+        startTimer();
+        publishSchedule();
+        Log.i(TAG, "Resumed schedule, next bell in "
+            + snapshot.getMillisUntilNextBell(SystemClock.elapsedRealtime()) + " ms");
+    }
+
+    private void showTimerCard() {
         startButton.setEnabled(false);
         stopButton.setEnabled(true);
         
@@ -349,45 +810,152 @@ public class MainActivity extends AppCompatActivity {
         findViewById(R.id.soundCard).setVisibility(View.GONE);
         recordingCard.setVisibility(View.GONE);
         timerCard.setVisibility(View.VISIBLE);
-        timerText.setVisibility(View.VISIBLE);
+        countdownView.setVisibility(View.VISIBLE);
+    }
 
-        startTimer(intervalSeconds);
+    /**
+     * Rings the bells of the schedule through the {@link IntervalScheduler},
+     * which computes every deadline from the clock, so late callbacks do not
+     * accumulate drift. In metronome mode the sequencer rings the bells instead.
+     */
+    private void startTimer() {
+        if (timerSnapshot.sequenced) {
+            startSequence();
+            return;
+        }
+        scheduler.start(timerSnapshot.anchorElapsedMs, timerSnapshot.intervalMs);
     }
 
-    private void startTimer(final long intervalSeconds) {
-        countDownTimer = new CountDownTimer(intervalSeconds * 1000, 1000) {
-            @Override
-            public void onTick(long millisUntilFinished) {
-                long totalSeconds = millisUntilFinished / 1000;
-                long hours = totalSeconds / 3600;
-                long minutes = (totalSeconds % 3600) / 60;
-                long seconds = totalSeconds % 60;
-                
-                timerText.setText(String.format("%02dh %02dm %02ds", hours, minutes, seconds));
-                
-                // Hide the bell status after first tick of new interval
-                if (statusText.getVisibility() == View.VISIBLE) {
-                    statusText.setVisibility(View.INVISIBLE);
+    private IntervalScheduler createScheduler() {
+        return new IntervalScheduler(new HandlerClock(this), PREPARE_AHEAD_MS,
+            new IntervalScheduler.Listener() {
+                @Override
+                public void onNextBell(long deadlineMs) {
+                    // The countdown view keeps its own time; nothing to lay out until the next bell
+                    countdownView.start(deadlineMs, timerSnapshot.intervalMs);
                 }
-            }
 
-            @Override
-            public void onFinish() {
-                playSelectedTone();
-                // Restart the timer automatically for the next interval
-                if (isRunning) {
-                    startTimer(intervalSeconds);
+                @Override
+                public void onPrepare(long millisUntilBell) {
+                    SessionStats.wakeup(SessionStats.Wakeup.TIMER);
+                    long cpuStart = SessionStats.begin();
+                    prepareNextBell(millisUntilBell);
+                    SessionStats.end(SessionStats.Stage.SCHEDULING, cpuStart);
                 }
+
+                @Override
+                public void onBell(long deadlineMs) {
+                    SessionStats.wakeup(SessionStats.Wakeup.TIMER);
+                    long cpuStart = SessionStats.begin();
+                    // The onset is measured on System.nanoTime(), which stops in deep sleep
+                    long lateMs = SystemClock.elapsedRealtime() - deadlineMs;
+                    getToneSynth().expectOnset(System.nanoTime() - lateMs * 1000000L);
+                    playSelectedTone();
+                    SessionStats.ring();
+                    releaseBellWakeLock();
+                    statusText.removeCallbacks(hideStatusText);
+                    statusText.postDelayed(hideStatusText, STATUS_SHOWN_MS);
+                    // Moves the widget and notification countdowns on to the next deadline
+                    publishSchedule();
+                    SessionStats.end(SessionStats.Stage.SCHEDULING, cpuStart);
+                }
+            });
+    }
+
+    /**
+     * Hands the schedule to the sequencer, which rings every bell at its exact
+     * sample on the output stream; nothing runs on the main thread per bell.
+     * The grid is lined up with the schedule's anchor, so a resumed or skipped
+     * schedule keeps its beat.
+     */
+    private void startSequence() {
+        long now = SystemClock.elapsedRealtime();
+        long millisUntilBell = timerSnapshot.getMillisUntilNextBell(now);
+        countdownView.startRepeating(now + millisUntilBell, timerSnapshot.intervalMs);
+        getToneSynth().startSequence(timerSnapshot.intervalMs, millisUntilBell);
+        if (selectedTone.isCustomRecording()) {
+            // A restored sound is set once the library is loaded, see onFirstFrame
+            if (selectedSound != null) {
+                sequenceLibrarySound(selectedSound);
+            }
+        } else {
+            selectedTone.sequence(getToneSynth(), toneParams);
+        }
+    }
+
+    private void sequenceLibrarySound(SoundLibrary.Entry sound) {
+        short[] samples = soundLibrary.peekSamples(sound);
+        if (samples != null) {
+            getToneSynth().setSequenceSamples(samples);
+            return;
+        }
+        // Decoded off the main thread; bells due before that are skipped
+        soundLoader.execute(() -> {
+            short[] loaded = soundLibrary.getSamples(sound);
+            if (loaded != null) {
+                getToneSynth().setSequenceSamples(loaded);
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Stops the timer or sequence of the schedule and releases what it holds for the next bell.
+     */
+    private void cancelTimer() {
+        scheduler.stop();
+        getToneSynth().stopSequence();
+        getToneSynth().primeOutput(0);
+        releaseBellWakeLock();
+    }
+
+    /**
+     * Gets the next bell ready shortly before it is due: its samples are
+     * rendered into the cache and the output track is primed, so the ring
+     * itself only starts a voice and is late by no more than the output latency.
+     */
+    private void prepareNextBell(long millisUntilBell) {
+        if (selectedTone.isCustomRecording()) {
+            if (selectedSound != null) {
+                preloadSound(selectedSound);
+            }
+        } else {
+            selectedTone.preload(getToneSynth(), toneParams);
+        }
+        getToneSynth().primeOutput(millisUntilBell + PRIME_MARGIN_MS);
+        // The render and the timer callback must not wait for the device to wake
+        bellWakeLock.acquire(millisUntilBell + PRIME_MARGIN_MS);
+        SessionStats.wakeLockAcquired(millisUntilBell + PRIME_MARGIN_MS);
+    }
+
+    private void releaseBellWakeLock() {
+        if (bellWakeLock.isHeld()) {
+            bellWakeLock.release();
+        }
+        SessionStats.wakeLockReleased();
+    }
+
+    /**
+     * Ends the energy accounting of the running session and logs it. The log
+     * is written in the background, also when the activity is being destroyed.
+     */
+    private void finishSession() {
+        SessionStats.Summary summary = SessionStats.finish();
+        if (summary == null) {
+            return;
+        }
+        Log.i(TAG, "Session: " + summary.durationMs / 1000 + " s, " + summary.processCpuMs
+            + " ms CPU (" + summary.getCpuMsPerHour() + " ms/h), " + summary.rings + " rings");
+        SessionStats.saveInBackground(new File(getFilesDir(), SESSION_LOG_FILENAME), summary);
     }
 
     private void stopInterval() {
         isRunning = false;
-        if (countDownTimer != null) {
-            countDownTimer.cancel();
-        }
-        timerText.setText("00h 00m 00s");
+        cancelTimer();
+        finishSession();
+        timerSnapshot = null;
+        TimerSnapshot.clear(preferences);
+        publishSchedule();
+        countdownView.stop();
         statusText.setVisibility(View.INVISIBLE);
         startButton.setEnabled(true);
         stopButton.setEnabled(false);
@@ -397,11 +965,12 @@ public class MainActivity extends AppCompatActivity {
         numericKeypad.setVisibility(View.VISIBLE);
         findViewById(R.id.soundCard).setVisibility(View.VISIBLE);
         timerCard.setVisibility(View.GONE);
-        timerText.setVisibility(View.GONE);
+        countdownView.setVisibility(View.GONE);
         
         // Show recording layout if custom recording is selected
         if (selectedTone.isCustomRecording()) {
             recordingCard.setVisibility(View.VISIBLE);
+            updateRecordingStatus();
         }
     }
 
@@ -409,21 +978,43 @@ public class MainActivity extends AppCompatActivity {
         try {
             // Show bell ringing status
             statusText.setVisibility(View.VISIBLE);
+            PipelineStats.count(PipelineStats.Counter.RINGS);
             
             // Handle custom recording playback
             if (selectedTone.isCustomRecording()) {
-                if (audioRecorder.hasRecording()) {
-                    audioRecorder.playRecordingForBell();
+                if (selectedSound != null) {
+                    playLibrarySound(selectedSound);
                 }
             } else {
                 // Play the selected synthesized tone
-                selectedTone.play(toneSynth);
+                selectedTone.play(getToneSynth(), toneParams);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
     
+    private void playLibrarySound(SoundLibrary.Entry sound) {
+        short[] samples = soundLibrary.peekSamples(sound);
+        if (samples != null) {
+            PipelineStats.count(PipelineStats.Counter.CACHE_HITS);
+            PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING, 0);
+            getToneSynth().playSamples(samples);
+            return;
+        }
+        PipelineStats.count(PipelineStats.Counter.CACHE_MISSES);
+        // Not resident yet: decode off the main thread, then play
+        soundLoader.execute(() -> {
+            long allocatedBefore = PipelineStats.threadAllocatedBytes();
+            short[] loaded = soundLibrary.getSamples(sound);
+            PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING,
+                PipelineStats.threadAllocatedBytes() - allocatedBefore);
+            if (loaded != null) {
+                getToneSynth().playSamples(loaded);
+            }
+        });
+    }
+    
     private void setupPermissionLauncher() {
         requestPermissionLauncher = registerForActivityResult(
             new ActivityResultContracts.RequestPermission(),
@@ -437,13 +1028,32 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         );
+        notificationPermissionLauncher = registerForActivityResult(
+            new ActivityResultContracts.RequestPermission(),
+            isGranted -> {
+                if (isGranted) {
+                    BellNotification.update(this);
+                }
+            }
+        );
+    }
+    
+    private void setupImportLauncher() {
+        importLauncher = registerForActivityResult(
+            new ActivityResultContracts.GetContent(),
+            uri -> {
+                if (uri != null) {
+                    importSound(uri);
+                }
+            }
+        );
     }
     
     private void setupRecordingButtons() {
         recordButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (audioRecorder.isRecording()) {
+                if (audioRecorder != null && audioRecorder.isRecording()) {
                     stopRecording();
                 } else {
                     checkPermissionAndRecord();
@@ -457,6 +1067,13 @@ public class MainActivity extends AppCompatActivity {
                 deleteRecording();
             }
         });
+
+        importButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                importLauncher.launch("audio/*");
+            }
+        });
     }
     
     private void checkPermissionAndRecord() {
@@ -471,7 +1088,7 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void startRecording() {
-        audioRecorder.startRecording(new AudioRecorder.RecordingCallback() {
+        getAudioRecorder().startRecording(new AudioRecorder.RecordingCallback() {
             @Override
             public void onRecordingStarted() {
                 runOnUiThread(() -> {
@@ -482,11 +1099,12 @@ public class MainActivity extends AppCompatActivity {
                     recordingStatusText.setTextColor(
                         ContextCompat.getColor(MainActivity.this, R.color.recording_active));
                     deleteRecordingButton.setVisibility(View.GONE);
+                    importButton.setVisibility(View.GONE);
                 });
             }
 
             @Override
-            public void onRecordingStopped(long durationMs) {
+            public void onRecordingStopped(SoundLibrary.Entry entry) {
                 // Not used here, handled in stopRecording
             }
 
@@ -498,55 +1116,66 @@ public class MainActivity extends AppCompatActivity {
                     updateRecordingStatus();
                 });
             }
-
-            @Override
-            public void onPlaybackStarted() {}
-
-            @Override
-            public void onPlaybackCompleted() {}
-
-            @Override
-            public void onPlaybackError(String error) {}
         });
     }
     
     private void stopRecording() {
-        audioRecorder.stopRecording(new AudioRecorder.RecordingCallback() {
+        String name = getString(R.string.recording_name, librarySounds.size() + 1);
+        getAudioRecorder().stopRecording(name, new AudioRecorder.RecordingCallback() {
             @Override
             public void onRecordingStarted() {}
 
             @Override
-            public void onRecordingStopped(long durationMs) {
-                runOnUiThread(() -> {
-                    updateRecordingStatus();
-                    long durationSec = (durationMs + 999) / 1000;
-                    Toast.makeText(MainActivity.this,
-                        getString(R.string.recording_saved, (int) durationSec), Toast.LENGTH_SHORT).show();
-                });
+            public void onRecordingStopped(SoundLibrary.Entry entry) {
+                onSoundAdded(entry);
+                Toast.makeText(MainActivity.this,
+                    getString(R.string.recording_saved, (int) entry.getDurationSeconds()),
+                    Toast.LENGTH_SHORT).show();
             }
 
             @Override
             public void onRecordingError(String error) {
+                Toast.makeText(MainActivity.this,
+                    getString(R.string.recording_error, error), Toast.LENGTH_SHORT).show();
+                updateRecordingStatus();
+            }
+        });
+        // Processing runs in the background; show idle controls meanwhile
+        updateRecordingStatus();
+    }
+    
+    private void importSound(Uri uri) {
+        soundLoader.execute(() -> {
+            try {
+                SoundLibrary.Entry entry = soundLibrary.importAudio(uri);
                 runOnUiThread(() -> {
+                    onSoundAdded(entry);
                     Toast.makeText(MainActivity.this,
-                        getString(R.string.recording_error, error), Toast.LENGTH_SHORT).show();
-                    updateRecordingStatus();
+                        getString(R.string.sound_imported, entry.name), Toast.LENGTH_SHORT).show();
                 });
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this,
+                    getString(R.string.import_error, e.getMessage()), Toast.LENGTH_SHORT).show());
             }
-
-            @Override
-            public void onPlaybackStarted() {}
-
-            @Override
-            public void onPlaybackCompleted() {}
-
-            @Override
-            public void onPlaybackError(String error) {}
         });
     }
     
+    private void onSoundAdded(SoundLibrary.Entry entry) {
+        selectedTone = BellTone.CUSTOM_RECORDING;
+        selectedSound = entry;
+        librarySounds = soundLibrary.getEntries();
+        updateSoundPicker();
+        updateRecordingStatus();
+    }
+    
     private void deleteRecording() {
-        audioRecorder.deleteRecording();
+        if (selectedSound == null) {
+            return;
+        }
+        soundLibrary.delete(selectedSound);
+        selectedSound = null;
+        librarySounds = soundLibrary.getEntries();
+        updateSoundPicker();
         updateRecordingStatus();
         Toast.makeText(this, R.string.recording_deleted, Toast.LENGTH_SHORT).show();
     }
@@ -557,10 +1186,11 @@ public class MainActivity extends AppCompatActivity {
             ContextCompat.getColorStateList(this, R.color.accent));
         recordingStatusText.setTextColor(
             ContextCompat.getColor(this, R.color.time_label));
+        importButton.setVisibility(View.VISIBLE);
         
-        if (audioRecorder.hasRecording()) {
-            long durationSec = audioRecorder.getRecordingDurationSeconds();
-            recordingStatusText.setText(getString(R.string.recording_saved, (int) durationSec));
+        if (selectedSound != null) {
+            recordingStatusText.setText(getString(R.string.sound_status,
+                selectedSound.name, (int) selectedSound.getDurationSeconds()));
             deleteRecordingButton.setVisibility(View.VISIBLE);
         } else {
             recordingStatusText.setText(R.string.no_recording);
@@ -569,19 +1199,54 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * Gets the minimum interval required based on the recording length.
-     * @return Minimum interval in seconds, or 0 if no recording or not using custom recording
+     * Gets the minimum interval required based on the sound length.
+     * @return Minimum interval in seconds, or 0 if no library sound is selected
      */
     private long getMinimumIntervalSeconds() {
-        if (selectedTone.isCustomRecording() && audioRecorder.hasRecording()) {
-            return audioRecorder.getRecordingDurationSeconds();
+        if (selectedTone.isCustomRecording() && selectedSound != null) {
+            return selectedSound.getDurationSeconds();
         }
         return 0;
     }
     
+    /**
+     * Prints startup times, bell pipeline stats and session energy accounting for
+     * {@code adb shell dumpsys activity com.intervalbell.app/.MainActivity [enable|disable|reset]}.
+     */
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+            @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "Startup: initial display "
+            + (initialDisplayMs < 0 ? "pending" : (initialDisplayMs - createdAtMs) + " ms")
+            + ", fully drawn "
+            + (fullyDrawnMs < 0 ? "pending" : (fullyDrawnMs - createdAtMs) + " ms")
+            + " after onCreate");
+        PipelineStats.dump(prefix, writer, args);
+        SessionStats.dump(prefix, writer, new File(getFilesDir(), SESSION_LOG_FILENAME));
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        preferences.unregisterOnSharedPreferenceChangeListener(snapshotListener);
+        // A recreated activity continues the saved schedule with its own timer
+        scheduler.stop();
+        statusText.removeCallbacks(hideStatusText);
+        releaseBellWakeLock();
+        if (isRunning && isFinishing()) {
+            // Leaving the app ends the schedule, as Stop does
+            TimerSnapshot.clear(preferences);
+            publishSchedule();
+            finishSession();
+        }
+        if (tonePreviewer != null) {
+            tonePreviewer.cancel();
+        }
+        soundLoader.shutdownNow();
+        if (tonePickerAdapter != null) {
+            tonePickerAdapter.release();
+        }
         if (toneSynth != null) {
             toneSynth.release();
         }
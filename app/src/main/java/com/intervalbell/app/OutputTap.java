@@ -0,0 +1,74 @@
+package com.intervalbell.app;
+
+/**
+ * Copy of the most recent mixer output for visualizers.
+ * The engine thread writes each audible block into a ring while a listener is
+ * set; readers on other threads take the latest samples. Reads are not
+ * synchronized with writes, which at worst tears one frame of a visualization.
+ * Nothing is copied while no listener is set.
+ */
+public final class OutputTap {
+    // Power of two, comfortably larger than any read
+    private static final int RING_SIZE = 4096;
+
+    private final short[] ring = new short[RING_SIZE];
+    private volatile long written;
+    private volatile Runnable listener;
+    private volatile boolean wakeRequested;
+
+    /**
+     * Enables the tap.
+     * @param onAudio Called on the engine thread when audio arrives after
+     *                {@link #requestWake()}; null disables the tap
+     */
+    public void setListener(Runnable onAudio) {
+        listener = onAudio;
+        wakeRequested = false;
+    }
+
+    /**
+     * Asks for the listener to be called once on the next audible block.
+     */
+    public void requestWake() {
+        wakeRequested = true;
+    }
+
+    /**
+     * @return Total number of samples written so far; changes when new audio arrives
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Copies the latest samples, oldest first, scaled to [-1, 1].
+     * @param out Receives {@code count} samples
+     * @param count At most half the ring
+     */
+    public void read(float[] out, int count) {
+        long end = written;
+        for (int i = 0; i < count; i++) {
+            out[i] = ring[(int) ((end - count + i) & (RING_SIZE - 1))] / 32768f;
+        }
+    }
+
+    /**
+     * Appends a block of mixer output. Engine thread only.
+     */
+    void write(short[] block, int frames) {
+        Runnable onAudio = listener;
+        if (onAudio == null) {
+            return;
+        }
+        int pos = (int) (written & (RING_SIZE - 1));
+        for (int i = 0; i < frames; i++) {
+            ring[pos] = block[i];
+            pos = (pos + 1) & (RING_SIZE - 1);
+        }
+        written += frames;
+        if (wakeRequested) {
+            wakeRequested = false;
+            onAudio.run();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.intervalbell.app;
+
+import java.util.Arrays;
+
+/**
+ * Convolution with a long impulse response by uniformly partitioned FFT
+ * convolution (overlap-save). The response is split into partitions of
+ * {@link #BLOCK_SIZE} that are transformed once; each input block is
+ * transformed once as well and kept in a frequency-domain delay line, so a
+ * block costs two FFTs plus one complex multiply-add per partition and bin,
+ * with no latency beyond the block itself.
+ *
+ * A {@link Response} is immutable and can be shared; a convolver holds the
+ * running state of one signal and is confined to one thread.
+ */
+public final class PartitionedConvolver {
+    public static final int BLOCK_SIZE = 256;
+
+    private static final int FFT_SIZE = BLOCK_SIZE * 2;
+
+    // Bins up to Nyquist; the rest of the spectrum of a real signal mirrors them
+    private static final int BINS = BLOCK_SIZE + 1;
+
+    /**
+     * An impulse response in transformed partitions.
+     */
+    public static final class Response {
+        final int length;
+        final float[][] re;
+        final float[][] im;
+
+        /**
+         * @param impulse The impulse response, at the rate of the signals it is applied to
+         */
+        public Response(float[] impulse) {
+            length = impulse.length;
+            int partitions = Math.max(1, (impulse.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            re = new float[partitions][BINS];
+            im = new float[partitions][BINS];
+
+            Fft fft = new Fft(FFT_SIZE);
+            float[] bufferRe = new float[FFT_SIZE];
+            float[] bufferIm = new float[FFT_SIZE];
+            for (int p = 0; p < partitions; p++) {
+                Arrays.fill(bufferRe, 0f);
+                Arrays.fill(bufferIm, 0f);
+                int start = p * BLOCK_SIZE;
+                int count = Math.max(0, Math.min(BLOCK_SIZE, impulse.length - start));
+                // Zero-padded to twice the block, so the circular convolution does not wrap
+                System.arraycopy(impulse, start, bufferRe, 0, count);
+                fft.transform(bufferRe, bufferIm);
+                System.arraycopy(bufferRe, 0, re[p], 0, BINS);
+                System.arraycopy(bufferIm, 0, im[p], 0, BINS);
+            }
+        }
+
+        /**
+         * @return Length of the impulse response in samples
+         */
+        public int getLength() {
+            return length;
+        }
+
+        public int getPartitionCount() {
+            return re.length;
+        }
+    }
+
+    private final Response response;
+    private final Fft fft = new Fft(FFT_SIZE);
+    private final float[] re = new float[FFT_SIZE];
+    private final float[] im = new float[FFT_SIZE];
+
+    // Previous and current input block, as transformed for overlap-save
+    private final float[] input = new float[FFT_SIZE];
+
+    // Spectra of the most recent input blocks, newest at delayLineHead
+    private final float[][] delayRe;
+    private final float[][] delayIm;
+    private int delayLineHead;
+    private int blocksSeen;
+
+    public PartitionedConvolver(Response response) {
+        this.response = response;
+        int partitions = response.getPartitionCount();
+        delayRe = new float[partitions][BINS];
+        delayIm = new float[partitions][BINS];
+    }
+
+    /**
+     * Convolves the next block of the signal.
+     * @param block {@link #BLOCK_SIZE} input samples, replaced by the same span of the output
+     */
+    public void process(float[] block) {
+        System.arraycopy(input, BLOCK_SIZE, input, 0, BLOCK_SIZE);
+        System.arraycopy(block, 0, input, BLOCK_SIZE, BLOCK_SIZE);
+
+        System.arraycopy(input, 0, re, 0, FFT_SIZE);
+        Arrays.fill(im, 0f);
+        fft.transform(re, im);
+
+        int partitions = delayRe.length;
+        delayLineHead = (delayLineHead + 1) % partitions;
+        System.arraycopy(re, 0, delayRe[delayLineHead], 0, BINS);
+        System.arraycopy(im, 0, delayIm[delayLineHead], 0, BINS);
+        blocksSeen = Math.min(blocksSeen + 1, partitions);
+
+        // Partition p of the response meets the input from p blocks ago
+        Arrays.fill(re, 0f);
+        Arrays.fill(im, 0f);
+        for (int p = 0; p < blocksSeen; p++) {
+            int slot = delayLineHead - p;
+            if (slot < 0) {
+                slot += partitions;
+            }
+            float[] xRe = delayRe[slot];
+            float[] xIm = delayIm[slot];
+            float[] hRe = response.re[p];
+            float[] hIm = response.im[p];
+            for (int k = 0; k < BINS; k++) {
+                re[k] += xRe[k] * hRe[k] - xIm[k] * hIm[k];
+                im[k] += xRe[k] * hIm[k] + xIm[k] * hRe[k];
+            }
+        }
+        for (int k = BINS; k < FFT_SIZE; k++) {
+            re[k] = re[FFT_SIZE - k];
+            im[k] = -im[FFT_SIZE - k];
+        }
+
+        fft.inverse(re, im);
+        // The first half has wrapped around; the second half is the output
+        System.arraycopy(re, BLOCK_SIZE, block, 0, BLOCK_SIZE);
+    }
+}
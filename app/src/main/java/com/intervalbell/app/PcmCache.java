@@ -0,0 +1,22 @@
+package com.intervalbell.app;
+
+import android.util.LruCache;
+
+/**
+ * Size-bounded LRU cache of decoded 16-bit PCM, keyed by sound id.
+ * Sized in bytes rather than entries so a few long sounds cannot crowd out the heap.
+ */
+public class PcmCache extends LruCache<String, short[]> {
+
+    /**
+     * @param maxBytes Upper bound on the total size of cached samples
+     */
+    public PcmCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(String key, short[] samples) {
+        return samples.length * 2;
+    }
+}
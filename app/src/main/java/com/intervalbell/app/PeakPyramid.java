@@ -0,0 +1,271 @@
+package com.intervalbell.app;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Multi-resolution summary of a PCM buffer for drawing waveforms.
+ * Holds min, max and RMS per {@link #BUCKET_SIZES bucket} of 64, 512 and 4096
+ * samples, quantized to 8 bits (about 3% of the size of the PCM). It is built
+ * in the same pass that produces the audio, so drawing at any width reads a
+ * few buckets per pixel column instead of every sample.
+ * Immutable once built; safe to share between threads.
+ */
+public final class PeakPyramid {
+    // Samples per bucket of the finest level
+    private static final int FINEST_BUCKET = 64;
+
+    // Each level merges this many buckets of the level below
+    private static final int LEVEL_RATIO = 8;
+
+    public static final int[] BUCKET_SIZES = {
+        FINEST_BUCKET, FINEST_BUCKET * LEVEL_RATIO, FINEST_BUCKET * LEVEL_RATIO * LEVEL_RATIO
+    };
+
+    private static final int FILE_MAGIC = 0x504b5059; // "PKPY"
+    private static final int FILE_VERSION = 1;
+
+    private final int length;
+    private final byte[][] mins;
+    private final byte[][] maxs;
+    private final byte[][] rmss;
+
+    private PeakPyramid(int length, byte[][] mins, byte[][] maxs, byte[][] rmss) {
+        this.length = length;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.rmss = rmss;
+    }
+
+    /**
+     * Streaming builder; feed samples in order as they are produced.
+     * Not thread-safe.
+     */
+    public static final class Builder {
+        private int length;
+        private final byte[][] mins = new byte[BUCKET_SIZES.length][];
+        private final byte[][] maxs = new byte[BUCKET_SIZES.length][];
+        private final byte[][] rmss = new byte[BUCKET_SIZES.length][];
+        private final int[] counts = new int[BUCKET_SIZES.length];
+
+        // Open bucket of each level
+        private final int[] bucketMin = new int[BUCKET_SIZES.length];
+        private final int[] bucketMax = new int[BUCKET_SIZES.length];
+        private final double[] bucketSquares = new double[BUCKET_SIZES.length];
+        private final int[] bucketSamples = new int[BUCKET_SIZES.length];
+
+        /**
+         * @param expectedLength Number of samples expected; only sizes the arrays
+         */
+        public Builder(int expectedLength) {
+            for (int level = 0; level < BUCKET_SIZES.length; level++) {
+                int buckets = Math.max(1, (expectedLength + BUCKET_SIZES[level] - 1) / BUCKET_SIZES[level]);
+                mins[level] = new byte[buckets];
+                maxs[level] = new byte[buckets];
+                rmss[level] = new byte[buckets];
+                resetBucket(level);
+            }
+        }
+
+        public void add(short sample) {
+            length++;
+            if (sample < bucketMin[0]) {
+                bucketMin[0] = sample;
+            }
+            if (sample > bucketMax[0]) {
+                bucketMax[0] = sample;
+            }
+            bucketSquares[0] += (double) sample * sample;
+            if (++bucketSamples[0] == BUCKET_SIZES[0]) {
+                closeBucket(0);
+            }
+        }
+
+        public void add(short[] samples, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add(samples[i]);
+            }
+        }
+
+        public PeakPyramid build() {
+            // Close the partial buckets at the end, lowest level first so they propagate
+            for (int level = 0; level < BUCKET_SIZES.length; level++) {
+                if (bucketSamples[level] > 0) {
+                    closeBucket(level);
+                }
+            }
+            byte[][] outMins = new byte[BUCKET_SIZES.length][];
+            byte[][] outMaxs = new byte[BUCKET_SIZES.length][];
+            byte[][] outRmss = new byte[BUCKET_SIZES.length][];
+            for (int level = 0; level < BUCKET_SIZES.length; level++) {
+                outMins[level] = Arrays.copyOf(mins[level], counts[level]);
+                outMaxs[level] = Arrays.copyOf(maxs[level], counts[level]);
+                outRmss[level] = Arrays.copyOf(rmss[level], counts[level]);
+            }
+            return new PeakPyramid(length, outMins, outMaxs, outRmss);
+        }
+
+        private void closeBucket(int level) {
+            int index = counts[level]++;
+            if (index == mins[level].length) {
+                int grown = mins[level].length * 2;
+                mins[level] = Arrays.copyOf(mins[level], grown);
+                maxs[level] = Arrays.copyOf(maxs[level], grown);
+                rmss[level] = Arrays.copyOf(rmss[level], grown);
+            }
+            mins[level][index] = (byte) (bucketMin[level] >> 8);
+            maxs[level][index] = (byte) (bucketMax[level] >> 8);
+            rmss[level][index] = quantizeRms(Math.sqrt(bucketSquares[level] / bucketSamples[level]));
+
+            int next = level + 1;
+            if (next < BUCKET_SIZES.length) {
+                bucketMin[next] = Math.min(bucketMin[next], bucketMin[level]);
+                bucketMax[next] = Math.max(bucketMax[next], bucketMax[level]);
+                bucketSquares[next] += bucketSquares[level];
+                bucketSamples[next] += bucketSamples[level];
+                if (bucketSamples[next] == BUCKET_SIZES[next]) {
+                    closeBucket(next);
+                }
+            }
+            resetBucket(level);
+        }
+
+        private void resetBucket(int level) {
+            bucketMin[level] = Short.MAX_VALUE;
+            bucketMax[level] = Short.MIN_VALUE;
+            bucketSquares[level] = 0;
+            bucketSamples[level] = 0;
+        }
+    }
+
+    /**
+     * Builds the pyramid of an existing buffer.
+     */
+    public static PeakPyramid of(short[] samples) {
+        Builder builder = new Builder(samples.length);
+        builder.add(samples, 0, samples.length);
+        return builder.build();
+    }
+
+    /**
+     * @return Number of samples summarized
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getSizeInBytes() {
+        int bytes = 0;
+        for (byte[] level : mins) {
+            bytes += level.length * 3;
+        }
+        return bytes;
+    }
+
+    /**
+     * Summarizes a range of samples as equal-width columns, in 16-bit sample units.
+     * Reads from the coarsest level whose buckets are no wider than a column, so
+     * the cost depends on the number of columns rather than samples. Columns
+     * narrower than 64 samples repeat the bucket they fall in.
+     * @param from First sample
+     * @param to End of the range, exclusive
+     * @param columns Number of columns
+     * @param min Receives the minimum per column
+     * @param max Receives the maximum per column
+     * @param rms Receives the RMS per column; may be null
+     */
+    public void getColumns(int from, int to, int columns, short[] min, short[] max, short[] rms) {
+        from = Math.max(0, from);
+        to = Math.min(length, to);
+        if (columns <= 0 || from >= to) {
+            Arrays.fill(min, 0, Math.max(0, columns), (short) 0);
+            Arrays.fill(max, 0, Math.max(0, columns), (short) 0);
+            if (rms != null) {
+                Arrays.fill(rms, 0, Math.max(0, columns), (short) 0);
+            }
+            return;
+        }
+
+        double samplesPerColumn = (double) (to - from) / columns;
+        int level = 0;
+        while (level + 1 < BUCKET_SIZES.length && BUCKET_SIZES[level + 1] <= samplesPerColumn) {
+            level++;
+        }
+        int size = BUCKET_SIZES[level];
+        byte[] levelMin = mins[level];
+        byte[] levelMax = maxs[level];
+        byte[] levelRms = rmss[level];
+
+        for (int c = 0; c < columns; c++) {
+            long start = from + (long) (to - from) * c / columns;
+            long end = from + (long) (to - from) * (c + 1) / columns;
+            int first = (int) (start / size);
+            int last = (int) Math.max(first, (end - 1) / size);
+            last = Math.min(last, levelMin.length - 1);
+
+            int lo = Integer.MAX_VALUE;
+            int hi = Integer.MIN_VALUE;
+            double squares = 0;
+            for (int b = first; b <= last; b++) {
+                lo = Math.min(lo, levelMin[b]);
+                hi = Math.max(hi, levelMax[b]);
+                double r = (levelRms[b] & 0xff) << 8;
+                squares += r * r;
+            }
+            min[c] = (short) (lo << 8);
+            // Top of the quantization step, so full scale maps back to full scale
+            max[c] = (short) ((hi << 8) | 0xff);
+            if (rms != null) {
+                rms[c] = (short) Math.min(Short.MAX_VALUE, Math.sqrt(squares / (last - first + 1)));
+            }
+        }
+    }
+
+    /**
+     * Writes the pyramid in the format read by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeInt(length);
+        for (int level = 0; level < BUCKET_SIZES.length; level++) {
+            out.writeInt(mins[level].length);
+            out.write(mins[level]);
+            out.write(maxs[level]);
+            out.write(rmss[level]);
+        }
+    }
+
+    /**
+     * Reads a pyramid written by {@link #writeTo}.
+     * @throws IOException If the data is truncated or not a pyramid
+     */
+    public static PeakPyramid readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+            throw new IOException("Not a peak pyramid");
+        }
+        int length = in.readInt();
+        byte[][] mins = new byte[BUCKET_SIZES.length][];
+        byte[][] maxs = new byte[BUCKET_SIZES.length][];
+        byte[][] rmss = new byte[BUCKET_SIZES.length][];
+        for (int level = 0; level < BUCKET_SIZES.length; level++) {
+            int count = in.readInt();
+            if (count != (length + BUCKET_SIZES[level] - 1) / BUCKET_SIZES[level]) {
+                throw new IOException("Corrupt peak pyramid");
+            }
+            mins[level] = new byte[count];
+            maxs[level] = new byte[count];
+            rmss[level] = new byte[count];
+            in.readFully(mins[level]);
+            in.readFully(maxs[level]);
+            in.readFully(rmss[level]);
+        }
+        return new PeakPyramid(length, mins, maxs, rmss);
+    }
+
+    private static byte quantizeRms(double rms) {
+        return (byte) Math.min(255, Math.round(rms / 256));
+    }
+}
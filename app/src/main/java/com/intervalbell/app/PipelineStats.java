@@ -0,0 +1,224 @@
+package com.intervalbell.app;
+
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Trace sections and in-process counters for the bell pipeline, from the
+ * cache lookup through rendering to the output track.
+ *
+ * Trace sections are always emitted; they show up in Perfetto/systrace
+ * captures and cost next to nothing while no capture is running. Counters and
+ * histograms are only updated while {@link #setEnabled enabled}, so callers
+ * check {@link #isEnabled()} before taking timestamps. Dump with
+ * {@code adb shell dumpsys activity com.intervalbell.app/.MainActivity [enable|disable|reset]}.
+ */
+public final class PipelineStats {
+
+    // Trace section names
+    public static final String SECTION_CACHE_LOOKUP = "bell:cacheLookup";
+    public static final String SECTION_RENDER = "bell:render";
+    public static final String SECTION_MIX_LAYERS = "bell:mixLayers";
+    public static final String SECTION_CREATE_TRACK = "bell:createTrack";
+    public static final String SECTION_PLAY = "bell:play";
+    public static final String SECTION_WRITE = "bell:write";
+
+    public enum Counter {
+        RINGS,
+        CACHE_HITS,
+        CACHE_MISSES,
+        TRACK_CREATIONS,
+        UNDERRUN_BLOCKS,
+        BYTES_ALLOCATED
+    }
+
+    public enum Metric {
+        RENDER_NS_PER_SAMPLE("ns"),
+        DSP_NS_PER_BLOCK("ns"),
+        TIME_TO_FIRST_SOUND_US("us"),
+        // Absolute error either way; the early ones are also recorded below
+        ONSET_ERROR_US("us"),
+        ONSET_EARLY_US("us"),
+        BYTES_PER_RING("B"),
+        DECODE_NS_PER_SAMPLE("ns"),
+        WRITE_US("us");
+
+        final String unit;
+
+        Metric(String unit) {
+            this.unit = unit;
+        }
+    }
+
+    /**
+     * Lock-free histogram with power-of-two buckets, for values of 0 and up.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            value = Math.max(0, value);
+            // Bucket i holds values below 2^i
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // Retry until the larger value sticks
+            }
+        }
+
+        /**
+         * @return Upper bound of the bucket holding the given quantile
+         */
+        long quantile(double q) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i == 0 ? 0 : Math.min(max.get(), (1L << i) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+
+    private static volatile boolean enabled = false;
+    private static final ThreadLocal<long[]> threadAllocated = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    private static final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+    private static final Histogram[] histograms = new Histogram[Metric.values().length];
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    private PipelineStats() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    public static void end() {
+        Trace.endSection();
+    }
+
+    public static void count(Counter counter) {
+        if (enabled) {
+            counters[counter.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * Accounts for a sample buffer allocated by the pipeline on this thread.
+     */
+    public static void allocated(long bytes) {
+        if (enabled) {
+            counters[Counter.BYTES_ALLOCATED.ordinal()].addAndGet(bytes);
+            threadAllocated.get()[0] += bytes;
+        }
+    }
+
+    /**
+     * @return Pipeline bytes allocated so far on this thread; the difference
+     *         across a ring gives its {@link Metric#BYTES_PER_RING}
+     */
+    public static long threadAllocatedBytes() {
+        return enabled ? threadAllocated.get()[0] : 0;
+    }
+
+    public static void record(Metric metric, long value) {
+        if (enabled) {
+            histograms[metric.ordinal()].record(value);
+        }
+    }
+
+    public static void reset() {
+        for (AtomicLong counter : counters) {
+            counter.set(0);
+        }
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Handles dumpsys arguments and prints all counters and histograms.
+     */
+    public static void dump(String prefix, PrintWriter writer, String[] args) {
+        if (args != null && args.length > 0) {
+            if ("enable".equals(args[0])) {
+                setEnabled(true);
+            } else if ("disable".equals(args[0])) {
+                setEnabled(false);
+            } else if ("reset".equals(args[0])) {
+                reset();
+            }
+        }
+
+        writer.println(prefix + "Bell pipeline stats (" + (enabled ? "enabled" : "disabled") + ")");
+        for (Counter counter : Counter.values()) {
+            writer.println(prefix + "  " + counter.name().toLowerCase(Locale.US) + ": "
+                + counters[counter.ordinal()].get());
+        }
+        long hits = counters[Counter.CACHE_HITS.ordinal()].get();
+        long lookups = hits + counters[Counter.CACHE_MISSES.ordinal()].get();
+        if (lookups > 0) {
+            writer.println(prefix + String.format(Locale.US, "  cache_hit_rate: %.1f%%", 100.0 * hits / lookups));
+        }
+        for (Metric metric : Metric.values()) {
+            Histogram histogram = histograms[metric.ordinal()];
+            long count = histogram.count.get();
+            if (count == 0) {
+                writer.println(prefix + "  " + metric.name().toLowerCase(Locale.US) + ": no samples");
+                continue;
+            }
+            writer.println(prefix + String.format(Locale.US,
+                "  %s: n=%d mean=%d p50<=%d p90<=%d p99<=%d max=%d %s",
+                metric.name().toLowerCase(Locale.US), count, histogram.sum.get() / count,
+                histogram.quantile(0.5), histogram.quantile(0.9), histogram.quantile(0.99),
+                histogram.max.get(), metric.unit));
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.intervalbell.app;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Locale;
+
+/**
+ * Post-processes custom recordings once, right after they are saved.
+ * Decodes the recording in a single streaming pass, trims leading and trailing
+ * silence with an RMS gate and normalizes the kept audio to the same loudness
+ * target as the synthesized tones. The result is 16-bit mono PCM at the
+ * synthesizer sample rate, ready to be cached and played without decoding.
+ */
+public class RecordingProcessor {
+    private static final String TAG = "RecordingProcessor";
+
+    private static final int SAMPLE_RATE = ToneSynthesizer.SAMPLE_RATE;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+
+    // Analysis windows of 10ms
+    private static final int WINDOW_SAMPLES = SAMPLE_RATE / 100;
+    // Windows more than 40 dB below the loudest window count as silence...
+    private static final double RELATIVE_GATE = 1e-4;
+    // ...as does anything below -60 dBFS, however quiet the recording is overall
+    private static final double ABSOLUTE_GATE = 1e-6;
+
+    // Keep a little audio around the gated region so attacks and decays stay natural
+    private static final int PRE_ROLL_SAMPLES = SAMPLE_RATE / 50;   // 20ms
+    private static final int TAIL_SAMPLES = SAMPLE_RATE * 3 / 20;   // 150ms
+    private static final int FADE_IN_SAMPLES = SAMPLE_RATE / 200;   // 5ms
+    private static final int FADE_OUT_SAMPLES = SAMPLE_RATE / 20;   // 50ms
+
+    // Never push peaks above -1 dBFS when normalizing
+    private static final double PEAK_CEILING = Short.MAX_VALUE * 0.89;
+
+    /**
+     * Outcome of processing a recording.
+     */
+    public static class Result {
+        public final short[] samples;
+        public final PeakPyramid peaks;
+        public final double loudnessDbfs;
+        public final double gainDb;
+        public final long trimmedMs;
+
+        Result(short[] samples, PeakPyramid peaks, double loudnessDbfs, double gainDb, long trimmedMs) {
+            this.samples = samples;
+            this.peaks = peaks;
+            this.loudnessDbfs = loudnessDbfs;
+            this.gainDb = gainDb;
+            this.trimmedMs = trimmedMs;
+        }
+
+        public long getDurationMs() {
+            return samples.length * 1000L / SAMPLE_RATE;
+        }
+    }
+
+    // Streaming state, reset for every processed file
+    private short[] buffer;
+    private int length;
+    private double[] windowEnergy;
+    private int[] windowPeak;
+    private int windowCount;
+    private double windowAccumulator;
+    private int windowMax;
+    private int windowFill;
+
+    // Linear resampler state (source rate -> SAMPLE_RATE)
+    private double resampleStep;
+    private double resamplePos;
+    private double resamplePrev;
+
+    /**
+     * Decodes, trims and normalizes the given recording.
+     * @param inputPath Path of the encoded recording
+     * @return The processed audio
+     * @throws IOException If the file cannot be decoded or contains only silence
+     */
+    public Result process(String inputPath) throws IOException {
+        long startNs = System.nanoTime();
+        decode(inputPath);
+
+        Result result = finish();
+        Log.d(TAG, "Processed " + inputPath + " in " + (System.nanoTime() - startNs) / 1_000_000
+                + "ms: trimmed " + result.trimmedMs + "ms, gain "
+                + String.format(Locale.US, "%.1f", result.gainDb) + " dB");
+        return result;
+    }
+
+    private void decode(String inputPath) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(inputPath);
+
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track in " + inputPath);
+            }
+
+            int sourceRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            reset(sourceRate, durationUs);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean outputDone = false;
+
+            while (!outputDone) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer in = codec.getInputBuffer(inIndex);
+                        int size = in != null ? extractor.readSampleData(in, 0) : -1;
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex >= 0) {
+                    ByteBuffer out = codec.getOutputBuffer(outIndex);
+                    if (out != null && info.size > 0) {
+                        out.position(info.offset);
+                        out.limit(info.offset + info.size);
+                        consume(out.order(ByteOrder.nativeOrder()).asShortBuffer(), channels);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        outputDone = true;
+                    }
+                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outFormat = codec.getOutputFormat();
+                    channels = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    resampleStep = (double) outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE) / SAMPLE_RATE;
+                }
+            }
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Failed to decode " + inputPath, e);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // Codec never started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void reset(int sourceRate, long durationUs) {
+        int expected = durationUs > 0
+                ? (int) (durationUs * SAMPLE_RATE / 1_000_000L) + WINDOW_SAMPLES
+                : SAMPLE_RATE * 5;
+        buffer = new short[expected];
+        length = 0;
+        windowEnergy = new double[expected / WINDOW_SAMPLES + 1];
+        windowPeak = new int[windowEnergy.length];
+        windowCount = 0;
+        windowAccumulator = 0;
+        windowMax = 0;
+        windowFill = 0;
+        resampleStep = (double) sourceRate / SAMPLE_RATE;
+        resamplePos = 0;
+        resamplePrev = 0;
+    }
+
+    /**
+     * Downmixes one block of decoder output and feeds it through the resampler.
+     */
+    private void consume(ShortBuffer pcm, int channels) {
+        while (pcm.remaining() >= channels) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += pcm.get();
+            }
+            double current = (double) sum / channels;
+
+            while (resamplePos <= 1.0) {
+                append(resamplePrev + (current - resamplePrev) * resamplePos);
+                resamplePos += resampleStep;
+            }
+            resamplePos -= 1.0;
+            resamplePrev = current;
+        }
+    }
+
+    /**
+     * Stores one output sample and updates the running window statistics.
+     */
+    private void append(double value) {
+        if (length == buffer.length) {
+            short[] grown = new short[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+        buffer[length++] = sample;
+
+        double normalized = sample / 32768.0;
+        windowAccumulator += normalized * normalized;
+        windowMax = Math.max(windowMax, Math.abs((int) sample));
+        if (++windowFill == WINDOW_SAMPLES) {
+            closeWindow();
+        }
+    }
+
+    private void closeWindow() {
+        if (windowCount == windowEnergy.length) {
+            double[] grownEnergy = new double[windowEnergy.length * 2];
+            int[] grownPeak = new int[windowPeak.length * 2];
+            System.arraycopy(windowEnergy, 0, grownEnergy, 0, windowCount);
+            System.arraycopy(windowPeak, 0, grownPeak, 0, windowCount);
+            windowEnergy = grownEnergy;
+            windowPeak = grownPeak;
+        }
+        windowEnergy[windowCount] = windowAccumulator / windowFill;
+        windowPeak[windowCount] = windowMax;
+        windowCount++;
+        windowAccumulator = 0;
+        windowMax = 0;
+        windowFill = 0;
+    }
+
+    /**
+     * Applies the gate and gain decisions taken from the window statistics.
+     */
+    private Result finish() throws IOException {
+        if (windowFill > 0) {
+            closeWindow();
+        }
+
+        double gate = getGate(windowEnergy, windowCount);
+
+        int first = -1;
+        int last = -1;
+        for (int w = 0; w < windowCount; w++) {
+            if (windowEnergy[w] >= gate) {
+                if (first < 0) {
+                    first = w;
+                }
+                last = w;
+            }
+        }
+        if (first < 0) {
+            throw new IOException("Recording contains only silence");
+        }
+
+        // Gated loudness and peak of the kept region
+        double loudnessDbfs = getGatedLoudness(windowEnergy, first, last + 1, gate);
+        int peak = 1;
+        for (int w = first; w <= last; w++) {
+            peak = Math.max(peak, windowPeak[w]);
+        }
+        double gain = Math.pow(10.0, (ToneSynthesizer.LOUDNESS_TARGET_DBFS - loudnessDbfs) / 20.0);
+        gain = Math.min(gain, PEAK_CEILING / peak);
+
+        int start = Math.max(0, first * WINDOW_SAMPLES - PRE_ROLL_SAMPLES);
+        int end = Math.min(length, (last + 1) * WINDOW_SAMPLES + TAIL_SAMPLES);
+        int count = end - start;
+        short[] out = new short[count];
+        PeakPyramid.Builder peaks = new PeakPyramid.Builder(count);
+
+        int fadeIn = Math.min(FADE_IN_SAMPLES, count / 2);
+        int fadeOut = Math.min(FADE_OUT_SAMPLES, count / 2);
+        for (int i = 0; i < count; i++) {
+            double factor = gain;
+            if (i < fadeIn) {
+                factor *= (double) i / fadeIn;
+            } else if (i >= count - fadeOut) {
+                factor *= (double) (count - 1 - i) / fadeOut;
+            }
+            out[i] = (short) Math.round(buffer[start + i] * factor);
+            peaks.add(out[i]);
+        }
+
+        long trimmedMs = (long) (length - count) * 1000L / SAMPLE_RATE;
+        buffer = null;
+        windowEnergy = null;
+        windowPeak = null;
+        return new Result(out, peaks.build(), loudnessDbfs, 20.0 * Math.log10(gain), trimmedMs);
+    }
+
+    /**
+     * Measures finished samples the way recordings are measured before they
+     * are normalized: mean power of the 10ms windows that pass the gate.
+     * @return Loudness in dBFS, or negative infinity for silence
+     */
+    static double measureLoudness(short[] samples) {
+        int count = (samples.length + WINDOW_SAMPLES - 1) / WINDOW_SAMPLES;
+        double[] energy = new double[count];
+        for (int w = 0; w < count; w++) {
+            int end = Math.min(samples.length, (w + 1) * WINDOW_SAMPLES);
+            double sum = 0;
+            for (int i = w * WINDOW_SAMPLES; i < end; i++) {
+                double normalized = samples[i] / 32768.0;
+                sum += normalized * normalized;
+            }
+            energy[w] = sum / (end - w * WINDOW_SAMPLES);
+        }
+        return getGatedLoudness(energy, 0, count, getGate(energy, count));
+    }
+
+    private static double getGate(double[] windowEnergy, int count) {
+        double loudest = 0;
+        for (int w = 0; w < count; w++) {
+            loudest = Math.max(loudest, windowEnergy[w]);
+        }
+        return Math.max(loudest * RELATIVE_GATE, ABSOLUTE_GATE);
+    }
+
+    private static double getGatedLoudness(double[] windowEnergy, int from, int to, double gate) {
+        double energy = 0;
+        int counted = 0;
+        for (int w = from; w < to; w++) {
+            if (windowEnergy[w] >= gate) {
+                energy += windowEnergy[w];
+                counted++;
+            }
+        }
+        return counted > 0 ? 10.0 * Math.log10(energy / counted) : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Writes processed samples as raw little-endian 16-bit PCM.
+     */
+    public static void writePcm(short[] samples, File file) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(bytes.array());
+        }
+    }
+
+    /**
+     * Writes a waveform summary next to the PCM it describes.
+     */
+    public static void writePeaks(PeakPyramid peaks, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            peaks.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a summary written by {@link #writePeaks}.
+     */
+    public static PeakPyramid readPeaks(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return PeakPyramid.readFrom(in);
+        }
+    }
+
+    /**
+     * Reads samples written by {@link #writePcm}.
+     */
+    public static short[] readPcm(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            in.readFully(bytes);
+        }
+        short[] samples = new short[bytes.length / 2];
+        PipelineStats.allocated(bytes.length * 2L);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+}
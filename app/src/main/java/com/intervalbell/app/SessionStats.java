@@ -0,0 +1,350 @@
+package com.intervalbell.app;
+
+import android.os.Debug;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Energy accounting for interval sessions, from Start to Stop: CPU time per
+ * stage of the bell pipeline, wake-lock hold time and wakeups, next to the
+ * process CPU time and the wall time of the session. Unlike
+ * {@link PipelineStats} this is always on while a session runs, so multi-hour
+ * sessions in the field can be compared across releases.
+ *
+ * Stage CPU time is the calling thread's CPU time across the stage, so work on
+ * other threads does not leak into it; what the stages do not cover shows up
+ * as the rest of the process CPU time. Finished sessions are kept in a small
+ * tab-separated log, newest last.
+ */
+public final class SessionStats {
+    private static final String TAG = "SessionStats";
+
+    // Sessions kept in the log
+    private static final int MAX_SESSIONS = 20;
+
+    public enum Stage {
+        RENDER,
+        UI_TICK,
+        SCHEDULING
+    }
+
+    public enum Wakeup {
+        // Timer callbacks on the main thread
+        TIMER,
+        // The audio thread resuming from its idle wait
+        ENGINE
+    }
+
+    /**
+     * Totals of one finished session.
+     */
+    public static final class Summary {
+        public final long startedAtMs;
+        public final long durationMs;
+        public final long processCpuMs;
+        public final long[] stageCpuUs;
+        public final long wakeLockMs;
+        public final long[] wakeups;
+        public final long rings;
+
+        Summary(long startedAtMs, long durationMs, long processCpuMs, long[] stageCpuUs,
+                long wakeLockMs, long[] wakeups, long rings) {
+            this.startedAtMs = startedAtMs;
+            this.durationMs = durationMs;
+            this.processCpuMs = processCpuMs;
+            this.stageCpuUs = stageCpuUs;
+            this.wakeLockMs = wakeLockMs;
+            this.wakeups = wakeups;
+            this.rings = rings;
+        }
+
+        /**
+         * @return Average process CPU time per hour of session, in ms
+         */
+        public long getCpuMsPerHour() {
+            return durationMs > 0 ? processCpuMs * 3600000L / durationMs : 0;
+        }
+
+        void print(String prefix, PrintWriter writer) {
+            StringBuilder line = new StringBuilder(prefix);
+            line.append(new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US).format(new Date(startedAtMs)))
+                .append(String.format(Locale.US, " %ds: cpu=%dms (%dms/h)",
+                    durationMs / 1000, processCpuMs, getCpuMsPerHour()));
+            for (Stage stage : Stage.values()) {
+                line.append(' ').append(stage.name().toLowerCase(Locale.US)).append('=')
+                    .append(stageCpuUs[stage.ordinal()] / 1000).append("ms");
+            }
+            line.append(" wake_lock=").append(wakeLockMs).append("ms");
+            for (Wakeup wakeup : Wakeup.values()) {
+                line.append(' ').append(wakeup.name().toLowerCase(Locale.US)).append("_wakeups=")
+                    .append(wakeups[wakeup.ordinal()]);
+            }
+            line.append(" rings=").append(rings);
+            writer.println(line);
+        }
+
+        String toLogLine() {
+            StringBuilder line = new StringBuilder();
+            line.append(startedAtMs).append('\t').append(durationMs).append('\t').append(processCpuMs);
+            for (long value : stageCpuUs) {
+                line.append('\t').append(value);
+            }
+            line.append('\t').append(wakeLockMs);
+            for (long value : wakeups) {
+                line.append('\t').append(value);
+            }
+            line.append('\t').append(rings);
+            return line.toString();
+        }
+
+        static Summary fromLogLine(String line) {
+            String[] fields = line.split("\t");
+            int stages = Stage.values().length;
+            int kinds = Wakeup.values().length;
+            if (fields.length != 5 + stages + kinds) {
+                return null;
+            }
+            try {
+                int f = 0;
+                long startedAtMs = Long.parseLong(fields[f++]);
+                long durationMs = Long.parseLong(fields[f++]);
+                long processCpuMs = Long.parseLong(fields[f++]);
+                long[] stageCpuUs = new long[stages];
+                for (int i = 0; i < stages; i++) {
+                    stageCpuUs[i] = Long.parseLong(fields[f++]);
+                }
+                long wakeLockMs = Long.parseLong(fields[f++]);
+                long[] wakeups = new long[kinds];
+                for (int i = 0; i < kinds; i++) {
+                    wakeups[i] = Long.parseLong(fields[f++]);
+                }
+                long rings = Long.parseLong(fields[f]);
+                return new Summary(startedAtMs, durationMs, processCpuMs, stageCpuUs,
+                    wakeLockMs, wakeups, rings);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static volatile boolean active = false;
+    private static final AtomicLongArray stageCpuNanos = new AtomicLongArray(Stage.values().length);
+    private static final AtomicLongArray wakeups = new AtomicLongArray(Wakeup.values().length);
+    private static final AtomicLong rings = new AtomicLong();
+
+    // Main thread only
+    private static long startedAtMs;
+    private static long startElapsedMs;
+    private static long startCpuMs;
+    private static long wakeLockHeldMs;
+    private static long wakeLockSinceMs = -1;
+    private static long wakeLockUntilMs;
+
+    // Writes the log one session at a time; outlives the activity that finished the session
+    private static final ExecutorService logWriter = Executors.newSingleThreadExecutor(runnable ->
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "SessionStats"));
+
+    private SessionStats() {
+    }
+
+    public static boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts a new session, dropping the totals of any unfinished one. Main thread only.
+     */
+    public static void start() {
+        for (int i = 0; i < stageCpuNanos.length(); i++) {
+            stageCpuNanos.set(i, 0);
+        }
+        for (int i = 0; i < wakeups.length(); i++) {
+            wakeups.set(i, 0);
+        }
+        rings.set(0);
+        startedAtMs = System.currentTimeMillis();
+        startElapsedMs = SystemClock.elapsedRealtime();
+        startCpuMs = Process.getElapsedCpuTime();
+        wakeLockHeldMs = 0;
+        wakeLockSinceMs = -1;
+        active = true;
+    }
+
+    /**
+     * Ends the session. Main thread only.
+     * @return Its totals, or null if no session was running
+     */
+    public static Summary finish() {
+        if (!active) {
+            return null;
+        }
+        wakeLockReleased();
+        Summary summary = snapshot();
+        active = false;
+        return summary;
+    }
+
+    /**
+     * @return Thread CPU time to pass to {@link #end}, or -1 when no session is running
+     */
+    public static long begin() {
+        return active ? Debug.threadCpuTimeNanos() : -1;
+    }
+
+    /**
+     * Adds the calling thread's CPU time since {@link #begin} to a stage.
+     */
+    public static void end(Stage stage, long beginNanos) {
+        if (beginNanos >= 0 && active) {
+            stageCpuNanos.addAndGet(stage.ordinal(), Debug.threadCpuTimeNanos() - beginNanos);
+        }
+    }
+
+    public static void wakeup(Wakeup kind) {
+        if (active) {
+            wakeups.incrementAndGet(kind.ordinal());
+        }
+    }
+
+    public static void ring() {
+        if (active) {
+            rings.incrementAndGet();
+        }
+    }
+
+    /**
+     * Accounts for a wake lock acquired with a timeout. Main thread only.
+     */
+    public static void wakeLockAcquired(long timeoutMs) {
+        if (!active) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (wakeLockSinceMs < 0) {
+            wakeLockSinceMs = now;
+        }
+        wakeLockUntilMs = now + timeoutMs;
+    }
+
+    /**
+     * Accounts for the wake lock being released, or having timed out. Main thread only.
+     */
+    public static void wakeLockReleased() {
+        if (wakeLockSinceMs < 0) {
+            return;
+        }
+        long end = Math.min(SystemClock.elapsedRealtime(), wakeLockUntilMs);
+        wakeLockHeldMs += Math.max(0, end - wakeLockSinceMs);
+        wakeLockSinceMs = -1;
+    }
+
+    private static Summary snapshot() {
+        long[] stageCpuUs = new long[Stage.values().length];
+        for (int i = 0; i < stageCpuUs.length; i++) {
+            stageCpuUs[i] = stageCpuNanos.get(i) / 1000;
+        }
+        long[] wakeupCounts = new long[Wakeup.values().length];
+        for (int i = 0; i < wakeupCounts.length; i++) {
+            wakeupCounts[i] = wakeups.get(i);
+        }
+        long heldMs = wakeLockHeldMs;
+        if (wakeLockSinceMs >= 0) {
+            heldMs += Math.min(SystemClock.elapsedRealtime(), wakeLockUntilMs) - wakeLockSinceMs;
+        }
+        return new Summary(startedAtMs, SystemClock.elapsedRealtime() - startElapsedMs,
+            Process.getElapsedCpuTime() - startCpuMs, stageCpuUs, heldMs, wakeupCounts, rings.get());
+    }
+
+    /**
+     * Appends a finished session to the log on a background thread; see {@link #save}.
+     */
+    public static void saveInBackground(File log, Summary summary) {
+        logWriter.execute(() -> save(log, summary));
+    }
+
+    /**
+     * Appends a finished session to the log, dropping the oldest beyond
+     * {@link #MAX_SESSIONS}. Does file IO; keep off the main thread.
+     */
+    public static void save(File log, Summary summary) {
+        List<Summary> sessions = load(log);
+        sessions.add(summary);
+        int first = Math.max(0, sessions.size() - MAX_SESSIONS);
+
+        File temp = new File(log.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (int i = first; i < sessions.size(); i++) {
+                writer.write(sessions.get(i).toLogLine());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing session log", e);
+            return;
+        }
+        if (!temp.renameTo(log)) {
+            Log.e(TAG, "Cannot replace session log");
+        }
+    }
+
+    /**
+     * Reads the finished sessions, oldest first.
+     */
+    public static List<Summary> load(File log) {
+        List<Summary> sessions = new ArrayList<>();
+        if (!log.exists()) {
+            return sessions;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(log), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Summary summary = Summary.fromLogLine(line);
+                if (summary != null) {
+                    sessions.add(summary);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading session log", e);
+        }
+        return sessions;
+    }
+
+    /**
+     * Prints the running session, if any, and the logged ones.
+     */
+    public static void dump(String prefix, PrintWriter writer, File log) {
+        writer.println(prefix + "Sessions (cpu, per-stage thread cpu, wake lock, wakeups)");
+        if (active) {
+            snapshot().print(prefix + "  running: ", writer);
+        }
+        List<Summary> sessions = load(log);
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            sessions.get(i).print(prefix + "  ", writer);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.intervalbell.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Library of user sounds (microphone recordings and imported files).
+ * A small tab-separated index holds everything the UI and the scheduler need
+ * (id, name, duration, loudness, format), so loading it never opens a media file.
+ * Samples are decoded on demand through {@link RecordingProcessor} and kept in a
+ * size-bounded {@link PcmCache}. Each processed sound has a {@link PeakPyramid}
+ * stored next to its PCM for drawing its waveform.
+ */
+public class SoundLibrary {
+    private static final String TAG = "SoundLibrary";
+    private static final String DIRECTORY = "sounds";
+    private static final String INDEX_FILENAME = "index.tsv";
+    private static final String PCM_EXTENSION = "pcm";
+    private static final String PEAKS_EXTENSION = "peaks";
+    private static final String RECORDING_FORMAT = "3gp";
+    private static final int CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int PEAK_CACHE_BYTES = 256 * 1024;
+
+    // Single recording kept by versions before the library existed
+    private static final String LEGACY_RECORDING = "custom_bell.3gp";
+    private static final String LEGACY_PROCESSED = "custom_bell.pcm";
+
+    /**
+     * One sound in the library, as stored in the index.
+     */
+    public static class Entry {
+        public final String id;
+        public final String name;
+        public final long durationMs;
+        public final double loudnessDbfs;
+        public final String format;
+
+        Entry(String id, String name, long durationMs, double loudnessDbfs, String format) {
+            this.id = id;
+            this.name = name;
+            this.durationMs = durationMs;
+            this.loudnessDbfs = loudnessDbfs;
+            this.format = format;
+        }
+
+        /**
+         * Gets the duration rounded up to whole seconds.
+         * @return Duration in seconds
+         */
+        public long getDurationSeconds() {
+            return (durationMs + 999) / 1000;
+        }
+
+        String toIndexLine() {
+            return id + '\t' + name.replace('\t', ' ').replace('\n', ' ') + '\t' + durationMs
+                    + '\t' + String.format(Locale.US, "%.2f", loudnessDbfs) + '\t' + format;
+        }
+
+        static Entry fromIndexLine(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 5) {
+                return null;
+            }
+            try {
+                return new Entry(fields[0], fields[1], Long.parseLong(fields[2]),
+                        Double.parseDouble(fields[3]), fields[4]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final Context context;
+    private final File directory;
+    private final PcmCache cache = new PcmCache(CACHE_BYTES);
+    private final LruCache<String, PeakPyramid> peakCache = new LruCache<String, PeakPyramid>(PEAK_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, PeakPyramid peaks) {
+            return peaks.getSizeInBytes();
+        }
+    };
+    // Guarded by this; null until the index is first needed
+    private List<Entry> entries;
+    // Guarded by this; stamp of the last id handed out
+    private long lastIdStamp;
+
+    public SoundLibrary(Context context) {
+        this.context = context.getApplicationContext();
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * Gets all sounds in the library, loading the index on first use. The
+     * first call may block on I/O; make it off the main thread.
+     * @return Snapshot of the library entries in insertion order
+     */
+    public synchronized List<Entry> getEntries() {
+        ensureLoaded();
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Looks up a sound by id.
+     * @return The entry, or null if it is not in the library
+     */
+    public synchronized Entry find(String id) {
+        ensureLoaded();
+        for (Entry entry : entries) {
+            if (entry.id.equals(id)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reserves a file for a new microphone recording.
+     * @return File to record into; pass it to {@link #addRecording} when done
+     */
+    public synchronized File newRecordingFile() {
+        ensureDirectory();
+        return new File(directory, newId() + "." + RECORDING_FORMAT);
+    }
+
+    /**
+     * Adds a finished recording: trims and normalizes it, caches the PCM and
+     * records it in the index.
+     * @param source File returned by {@link #newRecordingFile}
+     * @param name Display name
+     * @return The new entry
+     * @throws IOException If the recording cannot be processed
+     */
+    public Entry addRecording(File source, String name) throws IOException {
+        String fileName = source.getName();
+        String id = fileName.substring(0, fileName.lastIndexOf('.'));
+        try {
+            return addProcessed(id, name, RECORDING_FORMAT, source);
+        } catch (IOException e) {
+            source.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies an audio file picked by the user into the library and processes it.
+     * @param uri Content URI of the file
+     * @return The new entry
+     * @throws IOException If the file cannot be copied or decoded
+     */
+    public Entry importAudio(Uri uri) throws IOException {
+        String displayName = queryDisplayName(uri);
+        String format = "audio";
+        String name = displayName;
+        if (displayName != null) {
+            int dot = displayName.lastIndexOf('.');
+            if (dot > 0 && dot < displayName.length() - 1) {
+                format = displayName.substring(dot + 1).toLowerCase(Locale.US);
+                name = displayName.substring(0, dot);
+            }
+        }
+
+        String id;
+        synchronized (this) {
+            ensureDirectory();
+            id = newId();
+        }
+        File target = new File(directory, id + "." + format);
+        try (InputStream in = context.getContentResolver().openInputStream(uri);
+             OutputStream out = new FileOutputStream(target)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        try {
+            return addProcessed(id, name != null ? name : id, format, target);
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a sound and its files from the library.
+     */
+    public void delete(Entry entry) {
+        synchronized (this) {
+            ensureLoaded();
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).id.equals(entry.id)) {
+                    entries.remove(i);
+                    break;
+                }
+            }
+            saveIndex();
+        }
+        cache.remove(entry.id);
+        peakCache.remove(entry.id);
+        sourceFile(entry).delete();
+        pcmFile(entry.id).delete();
+        peaksFile(entry.id).delete();
+        Log.d(TAG, "Deleted " + entry.id);
+    }
+
+    /**
+     * Gets cached samples without touching the disk.
+     * @return The samples, or null if they are not resident
+     */
+    public short[] peekSamples(Entry entry) {
+        return cache.get(entry.id);
+    }
+
+    /**
+     * Gets the processed samples of a sound, reading or decoding them if they
+     * are not cached. May block on I/O; call off the main thread.
+     * @return Samples at {@link ToneSynthesizer#SAMPLE_RATE}, or null on error
+     */
+    public short[] getSamples(Entry entry) {
+        short[] samples = cache.get(entry.id);
+        if (samples != null) {
+            return samples;
+        }
+
+        try {
+            File pcm = pcmFile(entry.id);
+            if (pcm.exists() && pcm.length() > 0) {
+                samples = RecordingProcessor.readPcm(pcm);
+            } else {
+                // Processed PCM is missing, rebuild it; the cache may not hold a long sound
+                RecordingProcessor.Result result = process(entry.id, sourceFile(entry));
+                index(new Entry(entry.id, entry.name, result.getDurationMs(), result.loudnessDbfs, entry.format));
+                samples = result.samples;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading " + entry.id, e);
+            return null;
+        }
+
+        if (samples != null) {
+            cache.put(entry.id, samples);
+        }
+        return samples;
+    }
+
+    /**
+     * Gets the waveform summary of a sound, reading it from disk or, for sounds
+     * processed before summaries were stored, building and saving it.
+     * May block on I/O; call off the main thread.
+     * @return The summary, or null on error
+     */
+    public PeakPyramid getPeaks(Entry entry) {
+        PeakPyramid peaks = peakCache.get(entry.id);
+        if (peaks != null) {
+            return peaks;
+        }
+
+        File file = peaksFile(entry.id);
+        if (file.exists()) {
+            try {
+                peaks = RecordingProcessor.readPeaks(file);
+            } catch (IOException e) {
+                Log.w(TAG, "Rebuilding peaks of " + entry.id, e);
+            }
+        }
+        if (peaks == null) {
+            short[] samples = getSamples(entry);
+            if (samples == null) {
+                return null;
+            }
+            peaks = PeakPyramid.of(samples);
+            try {
+                RecordingProcessor.writePeaks(peaks, file);
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving peaks of " + entry.id, e);
+            }
+        }
+        peakCache.put(entry.id, peaks);
+        return peaks;
+    }
+
+    private Entry addProcessed(String id, String name, String format, File source) throws IOException {
+        RecordingProcessor.Result result = process(id, source);
+        return index(new Entry(id, name, result.getDurationMs(), result.loudnessDbfs, format));
+    }
+
+    /**
+     * Trims and normalizes a source file and stores its PCM and peaks.
+     */
+    private RecordingProcessor.Result process(String id, File source) throws IOException {
+        RecordingProcessor.Result result = new RecordingProcessor().process(source.getAbsolutePath());
+        RecordingProcessor.writePcm(result.samples, pcmFile(id));
+        RecordingProcessor.writePeaks(result.peaks, peaksFile(id));
+        cache.put(id, result.samples);
+        peakCache.put(id, result.peaks);
+        return result;
+    }
+
+    /**
+     * Adds an entry to the index, or replaces the entry with the same id.
+     */
+    private synchronized Entry index(Entry entry) {
+        ensureLoaded();
+        boolean replaced = false;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).id.equals(entry.id)) {
+                entries.set(i, entry);
+                replaced = true;
+                break;
+            }
+        }
+        if (!replaced) {
+            entries.add(entry);
+        }
+        saveIndex();
+        return entry;
+    }
+
+    private File sourceFile(Entry entry) {
+        return new File(directory, entry.id + "." + entry.format);
+    }
+
+    private File pcmFile(String id) {
+        return new File(directory, id + "." + PCM_EXTENSION);
+    }
+
+    private File peaksFile(String id) {
+        return new File(directory, id + "." + PEAKS_EXTENSION);
+    }
+
+    /**
+     * Gets an id no other sound has. Ids are reserved in increasing order, so
+     * concurrent imports and recordings never get the same one even before
+     * their files exist.
+     */
+    private synchronized String newId() {
+        String id;
+        long stamp = Math.max(System.currentTimeMillis(), lastIdStamp + 1);
+        do {
+            id = "s" + Long.toString(stamp++, 36);
+        } while (new File(directory, id + "." + PCM_EXTENSION).exists() || findLoaded(id) != null);
+        lastIdStamp = stamp - 1;
+        return id;
+    }
+
+    private Entry findLoaded(String id) {
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.id.equals(id)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void ensureDirectory() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create " + directory);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (entries != null) {
+            return;
+        }
+        entries = new ArrayList<>();
+
+        File index = new File(directory, INDEX_FILENAME);
+        if (index.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(index), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = Entry.fromIndexLine(line);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading index", e);
+            }
+        }
+
+        migrateLegacyRecording();
+    }
+
+    /**
+     * Moves the single custom_bell recording of older versions into the library.
+     * It is processed again like a new recording, so its duration and loudness
+     * are measured; the old processed PCM predates trimming and is dropped.
+     */
+    private void migrateLegacyRecording() {
+        File legacy = new File(context.getFilesDir(), LEGACY_RECORDING);
+        if (!legacy.exists()) {
+            return;
+        }
+        ensureDirectory();
+        String id = newId();
+        File recording = new File(directory, id + "." + RECORDING_FORMAT);
+        if (!legacy.renameTo(recording)) {
+            Log.e(TAG, "Cannot migrate " + legacy);
+            return;
+        }
+
+        try {
+            addProcessed(id, context.getString(R.string.tone_custom_recording), RECORDING_FORMAT, recording);
+        } catch (IOException e) {
+            // Put back, so the next load tries again
+            Log.e(TAG, "Cannot process legacy recording", e);
+            if (!recording.renameTo(legacy)) {
+                Log.e(TAG, "Cannot restore " + legacy);
+            }
+            return;
+        }
+        new File(context.getFilesDir(), LEGACY_PROCESSED).delete();
+        Log.d(TAG, "Migrated legacy recording to " + id);
+    }
+
+    private void saveIndex() {
+        ensureDirectory();
+        File index = new File(directory, INDEX_FILENAME);
+        File temp = new File(directory, INDEX_FILENAME + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (Entry entry : entries) {
+                writer.write(entry.toIndexLine());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing index", e);
+            return;
+        }
+        if (!temp.renameTo(index)) {
+            Log.e(TAG, "Cannot replace index");
+        }
+    }
+
+    private String queryDisplayName(Uri uri) {
+        try (Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int column = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                if (column >= 0) {
+                    return cursor.getString(column);
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot query name of " + uri, e);
+        }
+        return uri.getLastPathSegment();
+    }
+}
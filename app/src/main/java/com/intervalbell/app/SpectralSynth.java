@@ -0,0 +1,253 @@
+package com.intervalbell.app;
+
+import java.util.Arrays;
+
+/**
+ * Additive synthesis of many decaying partials by inverse FFT and overlap-add.
+ * Each frame is built in the frequency domain: a partial only touches the few
+ * bins under the main lobe of the Hann window around its frequency, so the
+ * cost per partial is per frame rather than per sample. Frames of
+ * {@link #FRAME_SIZE} overlap by three quarters, which also cross-fades each
+ * partial's level from frame to frame. Two frames are synthesized with one
+ * transform by packing the second into the imaginary part.
+ *
+ * Output is pulled one sample at a time with {@link #next()}; state carries
+ * over between calls, so a render can be produced block by block.
+ */
+public final class SpectralSynth {
+    public static final int FRAME_SIZE = 1024;
+    public static final int HOP_SIZE = FRAME_SIZE / 4;
+
+    // Bins kept on each side of a partial; the Hann sidelobes beyond are below -60 dB
+    private static final int LOBE_BINS = 8;
+
+    // Kernel table resolution, in steps per bin
+    private static final int KERNEL_STEPS = 64;
+
+    // Partials whose level has decayed below this are skipped
+    private static final double SILENT_LEVEL = 1e-6;
+
+    // Highest partial frequency, keeping every lobe clear of Nyquist
+    private static final double MAX_FREQUENCY = 0.45 * ToneSynthesizer.SAMPLE_RATE;
+
+    /**
+     * Spectrum of the centered Hann window at fractional bin offsets, for
+     * offsets 0..{@link #LOBE_BINS}. It is real and even, and a tone at an
+     * arbitrary frequency is the window spectrum shifted to that frequency.
+     */
+    private static final float[] KERNEL = createKernel();
+
+    /**
+     * Level shared by all partials over time, on top of their own decay.
+     */
+    public interface Envelope {
+        double at(double seconds);
+    }
+
+    private final Envelope envelope;
+    private final Fft fft = new Fft(FRAME_SIZE);
+    private final float[] re = new float[FRAME_SIZE];
+    private final float[] im = new float[FRAME_SIZE];
+    private final float[] overlap = new float[FRAME_SIZE];
+    private final float[] output = new float[HOP_SIZE];
+
+    // Per partial, at the center of the next frame pair
+    private final int partials;
+    private final double[] bins;
+    private final double[] levels;
+    private final double[] hopDecays;
+    private final double[] phaseCos;
+    private final double[] phaseSin;
+    private final double[] hopCos;
+    private final double[] hopSin;
+
+    private int nextFrame;
+    private int position;
+
+    /**
+     * @param frequencies Partial frequencies in Hz; partials too close to Nyquist are dropped
+     * @param levels Initial linear level of each partial
+     * @param decays Time constant in seconds of each partial's exponential decay;
+     *               {@link Double#POSITIVE_INFINITY} for none
+     * @param phases Phase of each partial at time 0, for cosine waves
+     * @param envelope Level applied to all partials, evaluated once per frame
+     */
+    public SpectralSynth(double[] frequencies, double[] levels, double[] decays,
+                         double[] phases, Envelope envelope) {
+        this.envelope = envelope;
+        int count = 0;
+        for (double frequency : frequencies) {
+            if (frequency > 0 && frequency < MAX_FREQUENCY) {
+                count++;
+            }
+        }
+        partials = count;
+        bins = new double[count];
+        this.levels = new double[count];
+        hopDecays = new double[count];
+        phaseCos = new double[count];
+        phaseSin = new double[count];
+        hopCos = new double[count];
+        hopSin = new double[count];
+
+        int p = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            double frequency = frequencies[i];
+            if (frequency <= 0 || frequency >= MAX_FREQUENCY) {
+                continue;
+            }
+            double hopSeconds = (double) HOP_SIZE / ToneSynthesizer.SAMPLE_RATE;
+            double hopAngle = 2.0 * Math.PI * frequency * hopSeconds;
+            bins[p] = frequency * FRAME_SIZE / ToneSynthesizer.SAMPLE_RATE;
+            this.levels[p] = levels[i];
+            hopDecays[p] = Math.exp(-hopSeconds / decays[i]);
+            phaseCos[p] = Math.cos(phases[i]);
+            phaseSin[p] = Math.sin(phases[i]);
+            hopCos[p] = Math.cos(hopAngle);
+            hopSin[p] = Math.sin(hopAngle);
+            p++;
+        }
+
+        // Frame j is centered on sample j * HOP_SIZE. The first two frames
+        // start before time 0, so only their second parts are kept.
+        synthesizePair(0);
+        addFrame(re, -FRAME_SIZE / 2);
+        addFrame(im, -FRAME_SIZE / 2 + HOP_SIZE);
+        nextFrame = 2;
+        position = HOP_SIZE;
+    }
+
+    /**
+     * @return Number of partials that are synthesized
+     */
+    public int getPartialCount() {
+        return partials;
+    }
+
+    /**
+     * @return The next output sample
+     */
+    public float next() {
+        if (position == HOP_SIZE) {
+            advance();
+        }
+        return output[position++];
+    }
+
+    /**
+     * Adds the frame that starts at the current hop, which completes the hop.
+     */
+    private void advance() {
+        if ((nextFrame & 1) == 0) {
+            synthesizePair(nextFrame);
+            addFrame(re, 0);
+        } else {
+            addFrame(im, 0);
+        }
+        nextFrame++;
+
+        System.arraycopy(overlap, 0, output, 0, HOP_SIZE);
+        System.arraycopy(overlap, HOP_SIZE, overlap, 0, FRAME_SIZE - HOP_SIZE);
+        Arrays.fill(overlap, FRAME_SIZE - HOP_SIZE, FRAME_SIZE, 0f);
+        position = 0;
+    }
+
+    /**
+     * Synthesizes frames {@code frame} and {@code frame + 1} into {@link #re}
+     * and {@link #im}, centered on index 0, and advances the partials by two hops.
+     */
+    private void synthesizePair(int frame) {
+        Arrays.fill(re, 0f);
+        Arrays.fill(im, 0f);
+        double frameSeconds = (double) HOP_SIZE / ToneSynthesizer.SAMPLE_RATE;
+        // Half the level goes to each of the two lobes, and half again undoes
+        // the gain of 2 of Hann windows overlapping by three quarters
+        double firstGain = 0.25 * envelope.at(frame * frameSeconds);
+        double secondGain = 0.25 * envelope.at((frame + 1) * frameSeconds);
+        int mask = FRAME_SIZE - 1;
+
+        for (int p = 0; p < partials; p++) {
+            double level = levels[p];
+            if (level < SILENT_LEVEL) {
+                continue;
+            }
+            double cos = phaseCos[p];
+            double sin = phaseSin[p];
+            double nextCos = cos * hopCos[p] - sin * hopSin[p];
+            double nextSin = cos * hopSin[p] + sin * hopCos[p];
+            double firstLevel = level * firstGain;
+            double secondLevel = level * hopDecays[p] * secondGain;
+
+            // Complex amplitude a of the first frame and b of the second, packed
+            // as a + i*b; mirrored bins take conj(a) + i*conj(b)
+            float aRe = (float) (firstLevel * cos);
+            float aIm = (float) (firstLevel * sin);
+            float bRe = (float) (secondLevel * nextCos);
+            float bIm = (float) (secondLevel * nextSin);
+            float posRe = aRe - bIm;
+            float posIm = aIm + bRe;
+            float negRe = aRe + bIm;
+            float negIm = bRe - aIm;
+
+            double bin = bins[p];
+            int first = (int) Math.ceil(bin - LOBE_BINS);
+            int last = (int) Math.floor(bin + LOBE_BINS);
+            for (int k = first; k <= last; k++) {
+                float w = kernel(k - bin);
+                int pos = k & mask;
+                int neg = -k & mask;
+                re[pos] += w * posRe;
+                im[pos] += w * posIm;
+                re[neg] += w * negRe;
+                im[neg] += w * negIm;
+            }
+
+            // Rotate on to the center of the next pair
+            phaseCos[p] = nextCos * hopCos[p] - nextSin * hopSin[p];
+            phaseSin[p] = nextCos * hopSin[p] + nextSin * hopCos[p];
+            levels[p] = level * hopDecays[p] * hopDecays[p];
+        }
+
+        fft.inverse(re, im);
+    }
+
+    /**
+     * Overlap-adds a frame that is centered on index 0 of {@code frame}.
+     * @param offset Start of the frame relative to the current hop
+     */
+    private void addFrame(float[] frame, int offset) {
+        int mask = FRAME_SIZE - 1;
+        for (int n = Math.max(0, -offset); n < FRAME_SIZE; n++) {
+            overlap[offset + n] += frame[(n + FRAME_SIZE / 2) & mask];
+        }
+    }
+
+    private static float kernel(double offset) {
+        double x = Math.abs(offset) * KERNEL_STEPS;
+        int i = (int) x;
+        float fraction = (float) (x - i);
+        return KERNEL[i] + (KERNEL[i + 1] - KERNEL[i]) * fraction;
+    }
+
+    private static float[] createKernel() {
+        // Hann window 0.5 + 0.5 cos(2 pi m / N) over m in [-N/2, N/2): its
+        // spectrum is three shifted Dirichlet kernels
+        float[] kernel = new float[LOBE_BINS * KERNEL_STEPS + 2];
+        for (int i = 0; i < kernel.length; i++) {
+            double x = (double) i / KERNEL_STEPS;
+            kernel[i] = (float) (0.5 * dirichlet(x) + 0.25 * dirichlet(x - 1) + 0.25 * dirichlet(x + 1));
+        }
+        return kernel;
+    }
+
+    /**
+     * Sum of cos(2 pi x m / N) over m in (-N/2, N/2).
+     */
+    private static double dirichlet(double x) {
+        double denominator = Math.sin(Math.PI * x / FRAME_SIZE);
+        if (Math.abs(denominator) < 1e-12) {
+            return FRAME_SIZE - 1;
+        }
+        return Math.sin(Math.PI * x * (FRAME_SIZE - 1) / FRAME_SIZE) / denominator;
+    }
+}
@@ -0,0 +1,231 @@
+package com.intervalbell.app;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * Live spectrum of the ringing bell, drawn as bars radiating from a ring.
+ * Each frame, synced to {@link Choreographer}, windows the latest output from
+ * an {@link OutputTap}, runs an {@link Fft} and folds the bins into
+ * log-spaced bars. All buffers are allocated up front; a frame allocates
+ * nothing. Frames only run while the view is visible and sound is playing or
+ * the bars are still falling; after that the view waits for the tap to report
+ * new audio.
+ */
+public class SpectrumView extends View implements Choreographer.FrameCallback {
+    private static final int FFT_SIZE = 1024;
+    private static final int BAR_COUNT = 48;
+    private static final float MIN_FREQUENCY = 100f;
+    private static final float MAX_FREQUENCY = 10000f;
+
+    // Bar range in dB relative to a full-scale sine
+    private static final float FLOOR_DB = -70f;
+
+    // Per-frame fall of a bar once its level drops (~0.5s to zero at 60 fps)
+    private static final float FALL_PER_FRAME = 0.035f;
+
+    private final Fft fft = new Fft(FFT_SIZE);
+    private final float[] window = new float[FFT_SIZE];
+    private final float[] re = new float[FFT_SIZE];
+    private final float[] im = new float[FFT_SIZE];
+    private final int[] barFirstBin = new int[BAR_COUNT];
+    private final int[] barLastBin = new int[BAR_COUNT];
+    private final float[] levels = new float[BAR_COUNT];
+    private final float[] barCos = new float[BAR_COUNT];
+    private final float[] barSin = new float[BAR_COUNT];
+    private final float[] lines = new float[BAR_COUNT * 4];
+    private final float magnitudeScale;
+
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint ringPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Posted from the engine thread when audio arrives while idle
+    private final Runnable resumeOnMain = this::resume;
+    private final Runnable wake = () -> post(resumeOnMain);
+
+    private OutputTap tap;
+    private boolean visible;
+    private boolean framePending;
+    private long lastWritten = -1;
+
+    private float centerX;
+    private float centerY;
+    private float ringRadius;
+    private float maxBarLength;
+
+    public SpectrumView(Context context) {
+        this(context, null);
+    }
+
+    public SpectrumView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        float windowSum = 0;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FFT_SIZE - 1)));
+            windowSum += window[i];
+        }
+        // A full-scale sine peaks at half the window sum
+        magnitudeScale = 2f / windowSum;
+
+        double ratio = MAX_FREQUENCY / MIN_FREQUENCY;
+        float binHz = (float) ToneSynthesizer.SAMPLE_RATE / FFT_SIZE;
+        for (int b = 0; b < BAR_COUNT; b++) {
+            double low = MIN_FREQUENCY * Math.pow(ratio, (double) b / BAR_COUNT);
+            double high = MIN_FREQUENCY * Math.pow(ratio, (double) (b + 1) / BAR_COUNT);
+            barFirstBin[b] = Math.max(1, (int) Math.round(low / binHz));
+            barLastBin[b] = Math.max(barFirstBin[b], (int) Math.round(high / binHz) - 1);
+
+            // Clockwise from the top
+            double angle = 2 * Math.PI * b / BAR_COUNT - Math.PI / 2;
+            barCos[b] = (float) Math.cos(angle);
+            barSin[b] = (float) Math.sin(angle);
+        }
+
+        int color = ContextCompat.getColor(context, R.color.accent);
+        barPaint.setColor(color);
+        barPaint.setStyle(Paint.Style.STROKE);
+        barPaint.setStrokeCap(Paint.Cap.ROUND);
+        barPaint.setStrokeWidth(getResources().getDimension(R.dimen.spectrum_bar_width));
+        ringPaint.setColor(color);
+        ringPaint.setAlpha(64);
+        ringPaint.setStyle(Paint.Style.STROKE);
+        ringPaint.setStrokeWidth(getResources().getDimension(R.dimen.spectrum_ring_width));
+    }
+
+    /**
+     * Sets the audio to visualize.
+     */
+    public void setTap(OutputTap tap) {
+        stop();
+        this.tap = tap;
+        updateRunning();
+    }
+
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        visible = isVisible;
+        updateRunning();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        visible = false;
+        updateRunning();
+    }
+
+    private void updateRunning() {
+        if (visible && tap != null && isAttachedToWindow()) {
+            tap.setListener(wake);
+            resume();
+        } else {
+            stop();
+        }
+    }
+
+    private void resume() {
+        if (!framePending && visible && tap != null) {
+            framePending = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void stop() {
+        if (framePending) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            framePending = false;
+        }
+        if (tap != null) {
+            tap.setListener(null);
+        }
+        for (int b = 0; b < BAR_COUNT; b++) {
+            levels[b] = 0f;
+        }
+        lastWritten = -1;
+        invalidate();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        framePending = false;
+        long written = tap.getWritten();
+        boolean fresh = written != lastWritten;
+        lastWritten = written;
+
+        boolean moving = fresh;
+        if (fresh) {
+            analyze();
+        } else {
+            for (int b = 0; b < BAR_COUNT; b++) {
+                levels[b] = Math.max(0f, levels[b] - FALL_PER_FRAME);
+                moving |= levels[b] > 0f;
+            }
+        }
+        invalidate();
+
+        if (moving) {
+            resume();
+        } else {
+            // Silent and settled: sleep until the engine reports audio
+            tap.requestWake();
+            if (tap.getWritten() != written) {
+                resume();
+            }
+        }
+    }
+
+    private void analyze() {
+        tap.read(re, FFT_SIZE);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            re[i] *= window[i];
+            im[i] = 0f;
+        }
+        fft.transform(re, im);
+
+        for (int b = 0; b < BAR_COUNT; b++) {
+            float peak = 0f;
+            for (int k = barFirstBin[b]; k <= barLastBin[b]; k++) {
+                peak = Math.max(peak, re[k] * re[k] + im[k] * im[k]);
+            }
+            float db = 10f * (float) Math.log10(peak * magnitudeScale * magnitudeScale + 1e-12f);
+            float level = Math.max(0f, Math.min(1f, (db - FLOOR_DB) / -FLOOR_DB));
+            // Rise at once, fall smoothly
+            levels[b] = Math.max(level, levels[b] - FALL_PER_FRAME);
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float contentWidth = w - getPaddingLeft() - getPaddingRight();
+        float contentHeight = h - getPaddingTop() - getPaddingBottom();
+        centerX = getPaddingLeft() + contentWidth / 2f;
+        centerY = getPaddingTop() + contentHeight / 2f;
+        float radius = Math.min(contentWidth, contentHeight) / 2f - barPaint.getStrokeWidth();
+        ringRadius = radius * 0.45f;
+        maxBarLength = radius - ringRadius;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawCircle(centerX, centerY, ringRadius, ringPaint);
+        for (int b = 0; b < BAR_COUNT; b++) {
+            float inner = ringRadius + barPaint.getStrokeWidth();
+            float outer = inner + levels[b] * maxBarLength;
+            lines[b * 4] = centerX + barCos[b] * inner;
+            lines[b * 4 + 1] = centerY + barSin[b] * inner;
+            lines[b * 4 + 2] = centerX + barCos[b] * outer;
+            lines[b * 4 + 3] = centerY + barSin[b] * outer;
+        }
+        canvas.drawLines(lines, barPaint);
+    }
+}
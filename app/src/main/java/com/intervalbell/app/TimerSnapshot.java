@@ -0,0 +1,126 @@
+package com.intervalbell.app;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+/**
+ * The running interval schedule, small enough to save on every state change
+ * and restore without replaying anything: bells ring at
+ * {@link #anchorElapsedMs} plus whole intervals, on the elapsed-realtime
+ * clock, which keeps counting through sleep and process death. The countdown
+ * is recomputed from the clock, so nothing is saved per tick.
+ *
+ * Elapsed realtime restarts at boot, so the snapshot also records when the
+ * device booted and is dropped after a reboot.
+ *
+ * In metronome mode the bells are rung by the {@link BellSequencer} on the
+ * output stream instead of by a timer; the anchor then only lines up the
+ * countdown and a resumed sequence with the original grid.
+ */
+public final class TimerSnapshot {
+    static final String PREFS_KEY = "timer_snapshot";
+
+    // Boot times further apart than this are taken as a reboot, not a clock adjustment
+    private static final long BOOT_TOLERANCE_MS = 60000;
+
+    public final long anchorElapsedMs;
+    public final long intervalMs;
+    public final BellTone tone;
+    // Id of the library sound when the tone is the custom recording, else null
+    public final String soundId;
+    // Whether the bells are sequenced on the output stream (metronome mode)
+    public final boolean sequenced;
+    private final long bootWallMs;
+
+    public TimerSnapshot(long anchorElapsedMs, long intervalMs, BellTone tone, String soundId,
+            boolean sequenced) {
+        this(anchorElapsedMs, intervalMs, tone, soundId, sequenced, getBootWallMs());
+    }
+
+    private TimerSnapshot(long anchorElapsedMs, long intervalMs, BellTone tone, String soundId,
+            boolean sequenced, long bootWallMs) {
+        this.anchorElapsedMs = anchorElapsedMs;
+        this.intervalMs = intervalMs;
+        this.tone = tone;
+        this.soundId = soundId;
+        this.sequenced = sequenced;
+        this.bootWallMs = bootWallMs;
+    }
+
+    /**
+     * @return The same interval and tone, counting from a new anchor
+     */
+    public TimerSnapshot withAnchor(long anchorElapsedMs) {
+        return new TimerSnapshot(anchorElapsedMs, intervalMs, tone, soundId, sequenced, bootWallMs);
+    }
+
+    /**
+     * Gets the time left until the next bell. Bells missed while nothing was
+     * running are skipped rather than rung late.
+     * @param nowElapsedMs Current {@link SystemClock#elapsedRealtime()}
+     * @return Milliseconds until the next bell, in (0, interval]
+     */
+    public long getMillisUntilNextBell(long nowElapsedMs) {
+        return IntervalScheduler.getMillisUntilNextBell(anchorElapsedMs, intervalMs, nowElapsedMs);
+    }
+
+    /**
+     * @param nowElapsedMs Current {@link SystemClock#elapsedRealtime()}
+     * @return When the next bell is due, on the same clock
+     */
+    public long getNextBellElapsedMs(long nowElapsedMs) {
+        return nowElapsedMs + getMillisUntilNextBell(nowElapsedMs);
+    }
+
+    /**
+     * Loads the saved schedule.
+     * @return The schedule, or null if none is saved or the device rebooted since
+     */
+    public static TimerSnapshot load(SharedPreferences prefs) {
+        String value = prefs.getString(PREFS_KEY, null);
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split(",", -1);
+        if (fields.length != 6) {
+            return null;
+        }
+        try {
+            long anchorElapsedMs = Long.parseLong(fields[0]);
+            long intervalMs = Long.parseLong(fields[1]);
+            BellTone tone = BellTone.valueOf(fields[2]);
+            String soundId = fields[3].isEmpty() ? null : fields[3];
+            boolean sequenced = Boolean.parseBoolean(fields[4]);
+            long bootWallMs = Long.parseLong(fields[5]);
+            if (intervalMs <= 0 || anchorElapsedMs > SystemClock.elapsedRealtime()
+                    || Math.abs(bootWallMs - getBootWallMs()) > BOOT_TOLERANCE_MS) {
+                return null;
+            }
+            return new TimerSnapshot(anchorElapsedMs, intervalMs, tone, soundId, sequenced, bootWallMs);
+        } catch (IllegalArgumentException e) {
+            // Unparseable numbers or a tone that no longer exists
+            return null;
+        }
+    }
+
+    /**
+     * Saves this schedule, replacing any saved one.
+     */
+    public void save(SharedPreferences prefs) {
+        prefs.edit()
+            .putString(PREFS_KEY, anchorElapsedMs + "," + intervalMs + "," + tone.name()
+                + "," + (soundId != null ? soundId : "") + "," + sequenced + "," + bootWallMs)
+            .apply();
+    }
+
+    /**
+     * Removes the saved schedule.
+     */
+    public static void clear(SharedPreferences prefs) {
+        prefs.edit().remove(PREFS_KEY).apply();
+    }
+
+    private static long getBootWallMs() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+}
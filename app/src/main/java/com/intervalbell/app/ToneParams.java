@@ -0,0 +1,122 @@
+package com.intervalbell.app;
+
+import android.content.SharedPreferences;
+
+/**
+ * User adjustments applied when rendering a synthesized tone: pitch in
+ * semitones, decay length in percent and brightness in percent.
+ * Values are kept as the integer slider steps so that equal settings always
+ * produce equal cache keys.
+ */
+public final class ToneParams {
+    public static final int MIN_PITCH = -12;
+    public static final int MAX_PITCH = 12;
+    public static final int MIN_DECAY = 50;
+    public static final int MAX_DECAY = 200;
+    public static final int DECAY_STEP = 5;
+    public static final int MIN_BRIGHTNESS = -100;
+    public static final int MAX_BRIGHTNESS = 100;
+    public static final int BRIGHTNESS_STEP = 10;
+
+    public static final ToneParams DEFAULT = new ToneParams(0, 100, 0);
+
+    private static final String PREFS_KEY_PREFIX = "tone_params_";
+
+    public final int pitchSemitones;
+    public final int decayPercent;
+    public final int brightnessPercent;
+
+    public ToneParams(int pitchSemitones, int decayPercent, int brightnessPercent) {
+        this.pitchSemitones = clamp(pitchSemitones, MIN_PITCH, MAX_PITCH);
+        this.decayPercent = clamp(decayPercent, MIN_DECAY, MAX_DECAY);
+        this.brightnessPercent = clamp(brightnessPercent, MIN_BRIGHTNESS, MAX_BRIGHTNESS);
+    }
+
+    /**
+     * @return Frequency multiplier for the pitch setting
+     */
+    public double getPitchRatio() {
+        return pitchSemitones == 0 ? 1.0 : Math.pow(2.0, pitchSemitones / 12.0);
+    }
+
+    /**
+     * @return Multiplier for tone duration and decay times
+     */
+    public double getDecayScale() {
+        return decayPercent / 100.0;
+    }
+
+    /**
+     * @return Spectral tilt in [-1, 1]; 0 leaves the tone unchanged
+     */
+    public double getBrightness() {
+        return brightnessPercent / 100.0;
+    }
+
+    public boolean isDefault() {
+        return pitchSemitones == 0 && decayPercent == 100 && brightnessPercent == 0;
+    }
+
+    /**
+     * Gets the key under which this variation of a tone is cached.
+     */
+    public String getCacheKey(ToneSynthesizer.ToneType type) {
+        if (isDefault()) {
+            return type.name();
+        }
+        return type.name() + "@" + pitchSemitones + "," + decayPercent + "," + brightnessPercent;
+    }
+
+    /**
+     * Loads the saved settings for a tone.
+     */
+    public static ToneParams load(SharedPreferences prefs, ToneSynthesizer.ToneType type) {
+        String value = prefs.getString(PREFS_KEY_PREFIX + type.name(), null);
+        if (value != null) {
+            String[] fields = value.split(",");
+            if (fields.length == 3) {
+                try {
+                    return new ToneParams(Integer.parseInt(fields[0]),
+                            Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+                } catch (NumberFormatException e) {
+                    // Fall back to defaults
+                }
+            }
+        }
+        return DEFAULT;
+    }
+
+    /**
+     * Saves these settings for a tone.
+     */
+    public void save(SharedPreferences prefs, ToneSynthesizer.ToneType type) {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (isDefault()) {
+            editor.remove(PREFS_KEY_PREFIX + type.name());
+        } else {
+            editor.putString(PREFS_KEY_PREFIX + type.name(),
+                    pitchSemitones + "," + decayPercent + "," + brightnessPercent);
+        }
+        editor.apply();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ToneParams)) {
+            return false;
+        }
+        ToneParams params = (ToneParams) other;
+        return pitchSemitones == params.pitchSemitones
+                && decayPercent == params.decayPercent
+                && brightnessPercent == params.brightnessPercent;
+    }
+
+    @Override
+    public int hashCode() {
+        return (pitchSemitones * 31 + decayPercent) * 31 + brightnessPercent;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
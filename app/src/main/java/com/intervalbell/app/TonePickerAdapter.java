@@ -0,0 +1,140 @@
+package com.intervalbell.app;
+
+import android.graphics.Bitmap;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recycled rows of the sound picker: a waveform thumbnail over the sound name.
+ * Binding only sets a cached bitmap or asks {@link WaveformThumbnails} to build
+ * one; the row is rebound when it is ready.
+ */
+public class TonePickerAdapter extends RecyclerView.Adapter<TonePickerAdapter.Holder>
+        implements WaveformThumbnails.Listener {
+
+    /**
+     * One entry of the picker.
+     */
+    public static final class Item {
+        final String name;
+        final String thumbnailKey;
+        final WaveformThumbnails.PeakSource source;
+
+        /**
+         * @param name Display name
+         * @param thumbnailKey Identifies the waveform across rebuilds of the list
+         * @param source Waveform for the thumbnail, or null for entries without a waveform
+         */
+        public Item(String name, String thumbnailKey, WaveformThumbnails.PeakSource source) {
+            this.name = name;
+            this.thumbnailKey = thumbnailKey;
+            this.source = source;
+        }
+    }
+
+    public interface OnItemSelectedListener {
+        void onItemSelected(int position);
+    }
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final ImageView thumbnail;
+        final TextView name;
+
+        Holder(View itemView) {
+            super(itemView);
+            thumbnail = itemView.findViewById(R.id.toneThumbnail);
+            name = itemView.findViewById(R.id.toneName);
+        }
+    }
+
+    private final WaveformThumbnails thumbnails;
+    private final OnItemSelectedListener listener;
+    private List<Item> items = new ArrayList<>();
+    private int selectedPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * @param thumbnailWidth Thumbnail width in pixels
+     * @param thumbnailHeight Thumbnail height in pixels
+     */
+    public TonePickerAdapter(int thumbnailWidth, int thumbnailHeight, OnItemSelectedListener listener) {
+        this.thumbnails = new WaveformThumbnails(thumbnailWidth, thumbnailHeight, this);
+        this.listener = listener;
+    }
+
+    /**
+     * Replaces the entries and the selection. Does not notify the listener.
+     */
+    public void setItems(List<Item> items, int selectedPosition) {
+        this.items = new ArrayList<>(items);
+        this.selectedPosition = selectedPosition;
+        notifyDataSetChanged();
+    }
+
+    public int getSelectedPosition() {
+        return selectedPosition;
+    }
+
+    /**
+     * Stops building thumbnails.
+     */
+    public void release() {
+        thumbnails.release();
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_tone, parent, false);
+        Holder holder = new Holder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || position == selectedPosition) {
+                return;
+            }
+            int previous = selectedPosition;
+            selectedPosition = position;
+            if (previous != RecyclerView.NO_POSITION) {
+                notifyItemChanged(previous);
+            }
+            notifyItemChanged(position);
+            listener.onItemSelected(position);
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        Item item = items.get(position);
+        holder.name.setText(item.name);
+        holder.itemView.setActivated(position == selectedPosition);
+
+        Bitmap bitmap = item.source != null ? thumbnails.get(item.thumbnailKey) : null;
+        holder.thumbnail.setImageBitmap(bitmap);
+        if (bitmap == null && item.source != null) {
+            thumbnails.request(item.thumbnailKey, item.source);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public void onThumbnailReady(String key) {
+        for (int i = 0; i < items.size(); i++) {
+            if (key.equals(items.get(i).thumbnailKey)) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.intervalbell.app;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Plays previews of tone variations while their sliders move.
+ * Requests are debounced, and only the latest one is rendered: starting a new
+ * render cancels the one in flight, which stops at its next block. Renders run
+ * on the audio engine thread, so a drag never queues a backlog of full-length
+ * renders. Each preview starts as soon as its first block is rendered, and
+ * variations already in the tone cache play without rendering.
+ * Call from the main thread.
+ */
+public class TonePreviewer {
+    private static final long DEBOUNCE_MS = 150;
+
+    private final ToneSynthesizer synth;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private Runnable pendingPreview;
+    private ToneRender currentRender;
+
+    public TonePreviewer(ToneSynthesizer synth) {
+        this.synth = synth;
+    }
+
+    /**
+     * Schedules a preview, replacing any preview that has not started yet.
+     * @param type The tone type
+     * @param params The variation to preview
+     */
+    public void request(ToneSynthesizer.ToneType type, ToneParams params) {
+        cancelPending();
+        pendingPreview = () -> {
+            pendingPreview = null;
+            preview(type, params);
+        };
+        handler.postDelayed(pendingPreview, DEBOUNCE_MS);
+    }
+
+    /**
+     * Drops the scheduled preview and cancels the render in flight.
+     */
+    public void cancel() {
+        cancelPending();
+        if (currentRender != null) {
+            currentRender.cancel();
+            currentRender = null;
+        }
+    }
+
+    private void cancelPending() {
+        if (pendingPreview != null) {
+            handler.removeCallbacks(pendingPreview);
+            pendingPreview = null;
+        }
+    }
+
+    private void preview(ToneSynthesizer.ToneType type, ToneParams params) {
+        cancel();
+        synth.stopPlayback();
+
+        if (synth.playCachedTone(type, params)) {
+            return;
+        }
+
+        currentRender = synth.newRender(type, params);
+        synth.playRender(currentRender);
+    }
+}
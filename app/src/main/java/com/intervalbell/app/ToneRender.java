@@ -0,0 +1,115 @@
+package com.intervalbell.app;
+
+import java.util.Random;
+
+/**
+ * State of one incremental tone render.
+ * {@link ToneSynthesizer#renderNext} fills {@link #samples} block by block and in
+ * order, carrying generator and filter state between blocks. The first
+ * {@link #getReady()} samples are final, so playback can start while the rest
+ * is still being rendered. Its {@link PeakPyramid} is built along with the
+ * samples. With room resonance the samples become final in whole convolution
+ * blocks. A render can be cancelled from any thread; it then
+ * stops at the next block boundary.
+ */
+public final class ToneRender {
+    final ToneSynthesizer.ToneType type;
+    final ToneParams params;
+    final short[] samples;
+
+    // Parameter values as used by the generators
+    final double pitch;
+    final double decay;
+    final double brightness;
+    final int fadeLength;
+    final boolean modeled;
+    final boolean resonant;
+
+    // Carried between blocks
+    int rendered;
+    Random random;
+    double toneFilterState;
+    SpectralSynth spectral;
+    Waveguide[] waveguides;
+    double pluckState;
+    Dsp.Stage chain;
+    float[] chainBuffer;
+    PartitionedConvolver convolver;
+    float[] convolverBlock;
+    final PeakPyramid.Builder peaks;
+
+    private final long createdNanos = System.nanoTime();
+    private volatile long firstSoundNanos;
+    private volatile int ready;
+    private volatile boolean cancelled;
+
+    ToneRender(ToneSynthesizer.ToneType type, ToneParams params, int length,
+               boolean modeled, boolean resonant) {
+        this.type = type;
+        this.params = params;
+        this.samples = new short[length];
+        this.peaks = new PeakPyramid.Builder(length);
+        this.pitch = params.getPitchRatio();
+        this.decay = params.getDecayScale();
+        this.brightness = params.getBrightness();
+        // 10ms or 10% of length
+        this.fadeLength = Math.min(ToneSynthesizer.SAMPLE_RATE / 100, length / 10);
+        this.modeled = modeled;
+        this.resonant = resonant;
+    }
+
+    /**
+     * @return Number of samples at the front of {@link #getSamples()} that are final
+     */
+    public int getReady() {
+        return ready;
+    }
+
+    void setReady(int ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * @return The output buffer; only the first {@link #getReady()} samples are valid
+     */
+    public short[] getSamples() {
+        return samples;
+    }
+
+    public boolean isComplete() {
+        return ready == samples.length;
+    }
+
+    /**
+     * Stops the render at the next block boundary.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called by the mixer when the first samples of this render are mixed.
+     */
+    void markFirstSound() {
+        if (firstSoundNanos == 0) {
+            firstSoundNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return Milliseconds from creating this render until its first samples
+     *         were mixed for output, or -1 if it has not sounded yet
+     */
+    public double getTimeToFirstSoundMs() {
+        long first = firstSoundNanos;
+        return first == 0 ? -1 : (first - createdNanos) / 1e6;
+    }
+
+    public String getCacheKey() {
+        return ToneSynthesizer.getVariantKey(params.getCacheKey(type), modeled, resonant);
+    }
+}
@@ -1,21 +1,103 @@
 package com.intervalbell.app;
 
-import android.media.AudioAttributes;
-import android.media.AudioFormat;
-import android.media.AudioTrack;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
 
 /**
  * High-quality audio synthesizer for generating smooth, modern bell tones.
  * Uses 44100 Hz sample rate with proper envelope shaping for professional sound.
+ * Rendered tones are cached and played as voices of an {@link AudioMixer}, so
+ * overlapping bells ring out instead of cutting each other off.
+ * A tone that is not cached yet starts playing after its first few milliseconds
+ * are rendered, and the rest is rendered ahead of the playhead. Playback and
+ * background rendering all run on the single {@link AudioEngine} thread.
+ * Cached tones can be kept as raw PCM or, to save memory, as IMA-ADPCM at
+ * roughly a quarter of the size, decoded block by block while they play.
+ * Plucked and struck tones can optionally be rendered by physical models
+ * ({@link Waveguide}) instead of summed partials.
+ * Tones can optionally ring in a small room: the render is convolved with a
+ * synthetic impulse response and cached next to the dry tone, so a ring
+ * never pays for the convolution.
  */
 public class ToneSynthesizer {
+    private static final String TAG = "ToneSynthesizer";
+    
+    static final int SAMPLE_RATE = 44100;
+
+    /**
+     * Gated RMS level (10ms windows within 40 dB of the loudest) that custom
+     * recordings are normalized to: the median of the built-in tones at their
+     * default settings, as measured by {@link RecordingProcessor#measureLoudness}.
+     */
+    static final double LOUDNESS_TARGET_DBFS = -14.0;
+    
+    // Enough for every built-in tone (~3.5 MB) with room to spare
+    private static final int TONE_CACHE_BYTES = 6 * 1024 * 1024;
+    
+    // Same number of tones as the raw cache at 4 bits per sample
+    private static final int COMPRESSED_CACHE_BYTES = TONE_CACHE_BYTES / 4;
+    
+    // Peak pyramids are ~3% of the PCM they describe
+    private static final int PEAK_CACHE_BYTES = TONE_CACHE_BYTES / 16;
+    
+    // Samples rendered between cancellation checks (~46ms)
+    private static final int RENDER_BLOCK = 2048;
+    
+    // Rendered before playback starts (~10ms); keeps time-to-first-sound independent of tone length
+    private static final int FIRST_BLOCK = SAMPLE_RATE / 100;
+    
+    // Output gains of the physical models, matched to the summed-partial tones
+    private static final double KALIMBA_MODEL_GAIN = 1.7;
+    private static final double MARIMBA_MODEL_GAIN = 1.0;
+    private static final double BAMBOO_MODEL_GAIN = 1.66;
+    
+    // Samples per DSP chain call
+    private static final int CHAIN_BLOCK = 256;
+    
+    // Chain output gains, keeping the filtered tones at their former level
+    private static final double AMBIENT_WAVE_GAIN = 0.87;
+    private static final double AURORA_GAIN = 0.89;
+    private static final double RAIN_STICK_GAIN = 1.23;
     
-    private static final int SAMPLE_RATE = 44100;
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_OUT_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+    // Cache key suffixes of tones rendered by physical models and with room resonance
+    private static final String MODELED_KEY_SUFFIX = "+model";
+    private static final String RESONANCE_KEY_SUFFIX = "+room";
     
-    private AudioTrack audioTrack;
-    private boolean isPlaying = false;
+    // Synthetic room: impulse response length and decay time constant (RT60 ~0.8s)
+    private static final double ROOM_SECONDS = 0.6;
+    private static final double ROOM_DECAY = 0.12;
+    
+    // Mix of the dry tone and the unit-energy room response
+    private static final double RESONANCE_DRY = 1.0;
+    private static final double RESONANCE_WET = 0.5;
+    
+    private final AudioEngine engine = new AudioEngine();
+    private final PcmCache toneCache = new PcmCache(TONE_CACHE_BYTES);
+    private final AdpcmCache compressedCache = new AdpcmCache(COMPRESSED_CACHE_BYTES);
+    private volatile boolean compressTones = false;
+    private volatile boolean resonance = false;
+    private volatile boolean physicalModels = false;
+    private PartitionedConvolver.Response roomResponse;
+    
+    // Waveform summaries of cached tones; kept when the tone tier changes
+    private final LruCache<String, PeakPyramid> peakCache =
+        new LruCache<String, PeakPyramid>(PEAK_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, PeakPyramid peaks) {
+                return peaks.getSizeInBytes();
+            }
+        };
+    
+    // Renders in progress by cache key; engine thread only
+    private final HashMap<String, ToneRender> inFlight = new HashMap<>();
     
     /**
      * Represents different synthesized tone types with unique characteristics.
@@ -56,79 +138,857 @@ public class ToneSynthesizer {
      * @param type The tone type to play
      */
     public void playTone(ToneType type) {
-        new Thread(() -> {
-            try {
-                short[] samples = generateTone(type);
-                playAudioSamples(samples);
-            } catch (Exception e) {
-                e.printStackTrace();
+        playTone(type, ToneParams.DEFAULT);
+    }
+    
+    /**
+     * Plays a variation of a synthesized tone. Returns immediately; an uncached
+     * tone starts after its first block is rendered on the engine thread.
+     * @param type The tone type to play
+     * @param params Pitch, decay and brightness adjustments
+     */
+    public void playTone(ToneType type, ToneParams params) {
+        if (playCached(getCacheKey(type, params))) {
+            PipelineStats.count(PipelineStats.Counter.CACHE_HITS);
+            PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING, 0);
+            return;
+        }
+        PipelineStats.count(PipelineStats.Counter.CACHE_MISSES);
+        engine.post(() -> {
+            long allocatedBefore = PipelineStats.threadAllocatedBytes();
+            startRender(type, params, true);
+            PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING,
+                PipelineStats.threadAllocatedBytes() - allocatedBefore);
+        });
+    }
+    
+    /**
+     * Renders a tone variation into the cache in the background, without playing it.
+     */
+    public void preloadTone(ToneType type, ToneParams params) {
+        if (!isCached(getCacheKey(type, params))) {
+            engine.post(() -> startRender(type, params, false));
+        }
+    }
+    
+    /**
+     * Plays a render while it is being filled. The render continues on the
+     * engine thread and is cached when complete; cancelling it ends both.
+     * If the same variation is already being rendered, that render is played instead.
+     * @param render A new render from {@link #newRender}
+     */
+    public void playRender(ToneRender render) {
+        engine.post(() -> {
+            if (render.isCancelled()) {
+                return;
+            }
+            String key = render.getCacheKey();
+            ToneRender active = inFlight.get(key);
+            if (active == null || active.isCancelled()) {
+                if (playCached(key)) {
+                    return;
+                }
+                active = render;
+                inFlight.put(key, render);
+                scheduleRender(render);
+            }
+            startVoice(active);
+        });
+    }
+    
+    /**
+     * Starts playing and/or rendering a tone variation. Engine thread only.
+     * A variation that is already being rendered is shared, not rendered twice.
+     */
+    private ToneRender startRender(ToneType type, ToneParams params, boolean play) {
+        String key = getCacheKey(type, params);
+        if (play ? playCached(key) : isCached(key)) {
+            // Finished while the command was queued
+            return null;
+        }
+        ToneRender render = inFlight.get(key);
+        if (render == null || render.isCancelled()) {
+            // A cancelled render, e.g. of a preview, never completes; start over
+            render = newRender(type, params);
+            inFlight.put(key, render);
+            scheduleRender(render);
+        }
+        if (play) {
+            startVoice(render);
+        }
+        return render;
+    }
+    
+    private void startVoice(ToneRender render) {
+        if (render.getReady() == 0) {
+            renderNext(render, FIRST_BLOCK);
+        }
+        engine.getMixer().play(render, 1f);
+    }
+    
+    /**
+     * Renders ahead of the playhead, one block per engine step, then caches the result.
+     */
+    private void scheduleRender(ToneRender render) {
+        long startNanos = System.nanoTime();
+        engine.schedule(() -> {
+            if (render.isCancelled()) {
+                // Only if it was not replaced by a new render of the same variation
+                inFlight.remove(render.getCacheKey(), render);
+                return AudioEngine.Step.DONE;
+            }
+            renderNext(render, RENDER_BLOCK);
+            if (!render.isComplete()) {
+                return AudioEngine.Step.WORKED;
+            }
+            store(render.getCacheKey(), render.samples, render.peaks.build());
+            inFlight.remove(render.getCacheKey(), render);
+            
+            double firstSoundMs = render.getTimeToFirstSoundMs();
+            if (firstSoundMs >= 0) {
+                PipelineStats.record(PipelineStats.Metric.TIME_TO_FIRST_SOUND_US, (long) (firstSoundMs * 1000));
+            }
+            Log.d(TAG, render.getCacheKey() + ": first sound after "
+                + formatMs(firstSoundMs) + ", rendered in "
+                + formatMs((System.nanoTime() - startNanos) / 1e6));
+            return AudioEngine.Step.DONE;
+        });
+    }
+    
+    private static String formatMs(double ms) {
+        return ms < 0 ? "(not played)" : String.format(Locale.US, "%.1f ms", ms);
+    }
+    
+    /**
+     * Gets the rendered samples of a tone, rendering and caching them on first use.
+     * @param type The tone type
+     * @return 16-bit mono samples; callers must not modify them
+     */
+    public short[] getToneSamples(ToneType type) {
+        return getToneSamples(type, ToneParams.DEFAULT);
+    }
+    
+    /**
+     * Gets the rendered samples of a tone variation, rendering and caching them
+     * on first use. Renders on the calling thread.
+     * @param type The tone type
+     * @param params Pitch, decay and brightness adjustments
+     * @return 16-bit mono samples; callers must not modify them
+     */
+    public short[] getToneSamples(ToneType type, ToneParams params) {
+        short[] samples = peekToneSamples(type, params);
+        if (samples == null) {
+            samples = render(newRender(type, params));
+        }
+        return samples;
+    }
+    
+    /**
+     * Gets a tone variation only if it is already rendered. Playback does not
+     * go through here: compressed tones are played without decoding them in full.
+     * @return The cached samples, decoded into a new buffer if stored compressed, or null
+     */
+    public short[] peekToneSamples(ToneType type, ToneParams params) {
+        return lookup(getCacheKey(type, params));
+    }
+    
+    /**
+     * Plays a tone variation if it is already rendered, without rendering anything.
+     * @return true if it was cached and is now queued for playback
+     */
+    public boolean playCachedTone(ToneType type, ToneParams params) {
+        return playCached(getCacheKey(type, params));
+    }
+    
+    /**
+     * Chooses how rendered tones are cached. Compressed tones take about a
+     * quarter of the memory and cost a block decode per voice while playing.
+     * Switching keeps what is cached: the tones are converted to the new tier
+     * one at a time between mix blocks, and play from the old one until then.
+     * @param compress true for IMA-ADPCM, false for raw 16-bit PCM
+     */
+    public void setCompressTones(boolean compress) {
+        if (compress == compressTones) {
+            return;
+        }
+        compressTones = compress;
+        if ((compress ? toneCache.size() : compressedCache.size()) == 0) {
+            // Nothing to convert, e.g. when restored at startup
+            return;
+        }
+        engine.post(() -> {
+            Iterator<String> keys = new ArrayList<>(
+                (compress ? toneCache.snapshot() : compressedCache.snapshot()).keySet()).iterator();
+            engine.schedule(() -> {
+                if (compressTones != compress || !keys.hasNext()) {
+                    // Done, or switched back; a new conversion takes over
+                    return AudioEngine.Step.DONE;
+                }
+                convert(keys.next(), compress);
+                return AudioEngine.Step.WORKED;
+            });
+        });
+    }
+    
+    /**
+     * Moves one cached tone into the given tier, if it is still in the other.
+     */
+    private void convert(String key, boolean compress) {
+        if (compress) {
+            short[] samples = toneCache.remove(key);
+            if (samples != null) {
+                compressedCache.put(key, encode(key, samples));
+            }
+        } else {
+            ImaAdpcm.Clip clip = compressedCache.remove(key);
+            if (clip != null) {
+                short[] samples = ImaAdpcm.decode(clip);
+                PipelineStats.allocated(samples.length * 2L);
+                toneCache.put(key, samples);
+            }
+        }
+    }
+    
+    public boolean isCompressTones() {
+        return compressTones;
+    }
+    
+    /**
+     * Turns room resonance on or off for tones rendered from now on. Dry and
+     * resonant renders are cached under their own keys, so switching keeps
+     * both and only renders what is missing.
+     */
+    public void setResonance(boolean enabled) {
+        resonance = enabled;
+    }
+    
+    public boolean isResonance() {
+        return resonance;
+    }
+    
+    /**
+     * Switches the tones that have a physical model between it and summed
+     * partials, for tones rendered from now on. Both are cached under their
+     * own keys.
+     */
+    public void setPhysicalModels(boolean enabled) {
+        physicalModels = enabled;
+    }
+    
+    public boolean isPhysicalModels() {
+        return physicalModels;
+    }
+    
+    /**
+     * @return true if the tone can be rendered by a {@link Waveguide} model
+     */
+    public static boolean hasPhysicalModel(ToneType type) {
+        return type == ToneType.KALIMBA || type == ToneType.MARIMBA || type == ToneType.BAMBOO_KNOCK;
+    }
+    
+    private String getCacheKey(ToneType type, ToneParams params) {
+        return getVariantKey(params.getCacheKey(type), physicalModels && hasPhysicalModel(type), resonance);
+    }
+    
+    private String getCacheKey(CompositeBell composite) {
+        // Any layer may have a model, so the setting always counts
+        return getVariantKey(composite.getCacheKey(), physicalModels, resonance);
+    }
+    
+    /**
+     * Appends the rendering options to a cache key.
+     */
+    static String getVariantKey(String key, boolean modeled, boolean resonant) {
+        if (modeled) {
+            key += MODELED_KEY_SUFFIX;
+        }
+        if (resonant) {
+            key += RESONANCE_KEY_SUFFIX;
+        }
+        return key;
+    }
+    
+    private short[] lookup(String key) {
+        PipelineStats.begin(PipelineStats.SECTION_CACHE_LOOKUP);
+        try {
+            short[] samples = toneCache.get(key);
+            if (samples == null) {
+                ImaAdpcm.Clip clip = compressedCache.get(key);
+                if (clip != null) {
+                    samples = ImaAdpcm.decode(clip);
+                    PipelineStats.allocated(samples.length * 2L);
+                }
+            }
+            return samples;
+        } finally {
+            PipelineStats.end();
+        }
+    }
+    
+    private boolean isCached(String key) {
+        return toneCache.get(key) != null || compressedCache.get(key) != null;
+    }
+    
+    /**
+     * Queues playback of a cached tone from whichever tier holds it.
+     * @return false if the tone is not cached
+     */
+    private boolean playCached(String key) {
+        PipelineStats.begin(PipelineStats.SECTION_CACHE_LOOKUP);
+        try {
+            short[] samples = toneCache.get(key);
+            if (samples != null) {
+                engine.play(samples, 1f);
+                return true;
+            }
+            ImaAdpcm.Clip clip = compressedCache.get(key);
+            if (clip != null) {
+                engine.play(clip, 1f);
+                return true;
+            }
+            return false;
+        } finally {
+            PipelineStats.end();
+        }
+    }
+    
+    /**
+     * Gets the waveform summary of a tone variation, rendering the tone on first use.
+     * Renders on the calling thread.
+     */
+    public PeakPyramid getTonePeaks(ToneType type, ToneParams params) {
+        String key = getCacheKey(type, params);
+        PeakPyramid peaks = peakCache.get(key);
+        if (peaks == null) {
+            short[] samples = getToneSamples(type, params);
+            peaks = peakCache.get(key);
+            if (peaks == null) {
+                // The tone was cached but its pyramid evicted
+                peaks = PeakPyramid.of(samples);
+                peakCache.put(key, peaks);
+            }
+        }
+        return peaks;
+    }
+    
+    /**
+     * Caches finished samples in the current tier, encoding them if compression
+     * is on, along with their waveform summary.
+     */
+    private void store(String key, short[] samples, PeakPyramid peaks) {
+        peakCache.put(key, peaks);
+        if (!compressTones) {
+            toneCache.put(key, samples);
+            return;
+        }
+        compressedCache.put(key, encode(key, samples));
+    }
+    
+    private ImaAdpcm.Clip encode(String key, short[] samples) {
+        long startNanos = System.nanoTime();
+        ImaAdpcm.Clip clip = ImaAdpcm.encode(samples);
+        PipelineStats.allocated(clip.getSizeInBytes());
+        Log.d(TAG, key + ": " + samples.length * 2 + " B compressed to " + clip.getSizeInBytes()
+            + " B in " + formatMs((System.nanoTime() - startNanos) / 1e6));
+        return clip;
+    }
+    
+    /**
+     * Plays a layered composite bell as a single voice.
+     * @param composite The composite to play
+     */
+    public void playComposite(CompositeBell composite) {
+        if (playCached(getCacheKey(composite))) {
+            PipelineStats.count(PipelineStats.Counter.CACHE_HITS);
+            PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING, 0);
+            return;
+        }
+        PipelineStats.count(PipelineStats.Counter.CACHE_MISSES);
+        engine.post(() -> startComposite(composite, true, null));
+    }
+    
+    /**
+     * Mixes a composite into the cache in the background, without playing it.
+     */
+    public void preloadComposite(CompositeBell composite) {
+        if (!isCached(getCacheKey(composite))) {
+            engine.post(() -> startComposite(composite, false, null));
+        }
+    }
+    
+    /**
+     * Renders the layers of a composite and mixes them once all are done,
+     * then plays the mix if asked to. Engine thread only.
+     * @param onMixed Receives the mix, whether or not it stays cached; may be null
+     */
+    private void startComposite(CompositeBell composite, boolean play, Consumer<short[]> onMixed) {
+        if (!play && onMixed == null && isCached(getCacheKey(composite))) {
+            return;
+        }
+        long allocatedBefore = PipelineStats.threadAllocatedBytes();
+        CompositeBell.Layer[] layers = composite.getLayers();
+        ToneRender[] renders = new ToneRender[layers.length];
+        for (int l = 0; l < layers.length; l++) {
+            renders[l] = startRender(layers[l].type, ToneParams.DEFAULT, false);
+        }
+        // Mix once every layer is rendered; layer renders are separate jobs
+        short[][] sources = new short[layers.length][];
+        engine.schedule(() -> {
+            for (int l = 0; l < layers.length; l++) {
+                if (renders[l] != null && renders[l].isCancelled()) {
+                    // Shared with a preview that was cancelled
+                    renders[l] = startRender(layers[l].type, ToneParams.DEFAULT, false);
+                }
+                if (renders[l] != null) {
+                    if (!renders[l].isComplete()) {
+                        // Rendered by its own job
+                        return AudioEngine.Step.WAITING;
+                    }
+                    sources[l] = renders[l].getSamples();
+                } else if (sources[l] == null) {
+                    // Looked up once, since a compressed layer is decoded on lookup
+                    sources[l] = lookup(getCacheKey(layers[l].type, ToneParams.DEFAULT));
+                    if (sources[l] == null) {
+                        // Evicted since it was found cached: render it again
+                        renders[l] = startRender(layers[l].type, ToneParams.DEFAULT, false);
+                        return AudioEngine.Step.WAITING;
+                    }
+                }
+            }
+            short[] samples = mixComposite(composite, sources);
+            if (play) {
+                PipelineStats.record(PipelineStats.Metric.BYTES_PER_RING,
+                    PipelineStats.threadAllocatedBytes() - allocatedBefore);
+                engine.getMixer().play(samples, 1f);
+            }
+            if (onMixed != null) {
+                onMixed.accept(samples);
+            }
+            return AudioEngine.Step.DONE;
+        });
+    }
+    
+    /**
+     * Gets the pre-mixed samples of a composite, mixing and caching them on first use.
+     * Renders on the calling thread.
+     * @param composite The composite bell
+     * @return 16-bit mono samples; callers must not modify them
+     */
+    public short[] getCompositeSamples(CompositeBell composite) {
+        short[] samples = lookup(getCacheKey(composite));
+        if (samples == null) {
+            CompositeBell.Layer[] layers = composite.getLayers();
+            short[][] sources = new short[layers.length][];
+            for (int l = 0; l < layers.length; l++) {
+                sources[l] = getToneSamples(layers[l].type);
+            }
+            samples = mixComposite(composite, sources);
+        }
+        return samples;
+    }
+    
+    /**
+     * Gets the waveform summary of a composite, mixing it on first use.
+     * Renders on the calling thread.
+     */
+    public PeakPyramid getCompositePeaks(CompositeBell composite) {
+        String key = getCacheKey(composite);
+        PeakPyramid peaks = peakCache.get(key);
+        if (peaks == null) {
+            short[] samples = getCompositeSamples(composite);
+            peaks = peakCache.get(key);
+            if (peaks == null) {
+                peaks = PeakPyramid.of(samples);
+                peakCache.put(key, peaks);
+            }
+        }
+        return peaks;
+    }
+    
+    private short[] mixComposite(CompositeBell composite, short[][] sources) {
+        short[] samples;
+        PeakPyramid.Builder peaks;
+        PipelineStats.begin(PipelineStats.SECTION_MIX_LAYERS);
+        long cpuStart = SessionStats.begin();
+        try {
+            int length = getMixLength(composite.getLayers(), sources);
+            peaks = new PeakPyramid.Builder(length);
+            samples = mixLayers(composite.getLayers(), sources, length, peaks);
+        } finally {
+            SessionStats.end(SessionStats.Stage.RENDER, cpuStart);
+            PipelineStats.end();
+        }
+        store(getCacheKey(composite), samples, peaks.build());
+        return samples;
+    }
+    
+    private static int getLayerOffset(CompositeBell.Layer layer) {
+        return (int) ((long) layer.offsetMs * SAMPLE_RATE / 1000);
+    }
+    
+    private static int getMixLength(CompositeBell.Layer[] layers, short[][] sources) {
+        int length = 0;
+        for (int l = 0; l < layers.length; l++) {
+            length = Math.max(length, getLayerOffset(layers[l]) + sources[l].length);
+        }
+        return length;
+    }
+    
+    /**
+     * Mixes the layers of a composite into one buffer, scaling down if the sum would clip.
+     * @param peaks Receives the mixed samples as they are written
+     */
+    private short[] mixLayers(CompositeBell.Layer[] layers, short[][] sources, int length,
+            PeakPyramid.Builder peaks) {
+        float[] mix = new float[length];
+        PipelineStats.allocated(length * 6L);
+        for (int l = 0; l < layers.length; l++) {
+            short[] source = sources[l];
+            float gain = layers[l].gain;
+            int offset = getLayerOffset(layers[l]);
+            for (int i = 0; i < source.length; i++) {
+                mix[offset + i] += source[i] * gain;
+            }
+        }
+        
+        float peak = 1f;
+        for (float value : mix) {
+            peak = Math.max(peak, Math.abs(value));
+        }
+        float scale = Math.min(1f, Short.MAX_VALUE * 0.9f / peak);
+        
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (mix[i] * scale);
+            peaks.add(samples[i]);
+        }
+        return samples;
+    }
+    
+    /**
+     * Gets the tap that mirrors everything the synthesizer plays, for visualizers.
+     */
+    public OutputTap getOutputTap() {
+        return engine.getTap();
+    }
+    
+    /**
+     * Keeps the output primed for a ring that is due within the hold time, so
+     * the ring itself only starts a voice. See {@link AudioEngine#arm}.
+     * @param holdMs How long to keep the output primed; 0 releases it
+     */
+    public void primeOutput(long holdMs) {
+        engine.arm(holdMs);
+    }
+    
+    /**
+     * Rings bells on a sample-accurate grid from the engine thread, with the
+     * output playing continuously, until {@link #stopSequence}. Set the sound
+     * right after with one of the {@code setSequence} methods; bells due
+     * before it is ready are skipped. See {@link BellSequencer}.
+     * @param intervalMs Time between bells
+     * @param firstBellMs Time from now to the first bell
+     */
+    public void startSequence(long intervalMs, long firstBellMs) {
+        engine.startSequence(intervalMs, firstBellMs);
+    }
+    
+    /**
+     * Stops the sequence. Bells already ringing play out.
+     */
+    public void stopSequence() {
+        engine.stopSequence();
+    }
+    
+    /**
+     * Sets the sound of the running sequence to a tone variation. An uncached
+     * tone is rendered in the background and played as it fills until then.
+     */
+    public void setSequenceTone(ToneType type, ToneParams params) {
+        engine.post(() -> {
+            BellSequencer sequencer = engine.getSequencer();
+            if (!setSequenceCached(sequencer, getCacheKey(type, params))) {
+                sequencer.setRender(startRender(type, params, false));
             }
-        }).start();
+        });
+    }
+    
+    /**
+     * Sets the sound of the running sequence to a composite, mixing it in the
+     * background if it is not cached.
+     */
+    public void setSequenceComposite(CompositeBell composite) {
+        engine.post(() -> {
+            BellSequencer sequencer = engine.getSequencer();
+            if (setSequenceCached(sequencer, getCacheKey(composite))) {
+                return;
+            }
+            // Handed over as mixed: a long composite may not fit the cache, or be evicted from it
+            long generation = sequencer.getGeneration();
+            startComposite(composite, false, mixed -> {
+                if (sequencer.getGeneration() == generation) {
+                    sequencer.setSamples(mixed);
+                }
+            });
+        });
     }
     
     /**
-     * Generate audio samples for the specified tone type.
+     * Sets the sound of the sequence to a cached tone from whichever tier
+     * holds it; a compressed tone is decoded block by block as each bell plays.
+     * @return false if the tone is not cached
      */
-    private short[] generateTone(ToneType type) {
+    private boolean setSequenceCached(BellSequencer sequencer, String key) {
+        short[] samples = toneCache.get(key);
+        if (samples != null) {
+            sequencer.setSamples(samples);
+            return true;
+        }
+        ImaAdpcm.Clip clip = compressedCache.get(key);
+        if (clip != null) {
+            sequencer.setClip(clip);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Sets the sound of the running sequence to already rendered 16-bit mono samples.
+     */
+    public void setSequenceSamples(short[] samples) {
+        engine.post(() -> engine.getSequencer().setSamples(samples));
+    }
+    
+    /**
+     * Measures the onset of the next sound played against its deadline.
+     * Call right before playing it. See {@link AudioEngine#expectOnset}.
+     * @param deadlineNanos When the sound was due, in {@link System#nanoTime()}
+     */
+    public void expectOnset(long deadlineNanos) {
+        engine.expectOnset(deadlineNanos);
+    }
+    
+    /**
+     * Plays already rendered 16-bit mono samples at the synthesizer sample rate.
+     * @param samples The samples to play
+     */
+    public void playSamples(short[] samples) {
+        engine.play(samples, 1f);
+    }
+    
+    /**
+     * Starts an incremental render of a tone variation.
+     * Call {@link #renderNext} until {@link ToneRender#isComplete()}.
+     * @param type The tone type
+     * @param params Pitch, decay and brightness adjustments
+     * @return The render state, with an allocated but empty buffer
+     */
+    public ToneRender newRender(ToneType type, ToneParams params) {
+        ToneRender render = new ToneRender(type, params,
+            (int) (SAMPLE_RATE * (getBaseDuration(type) * params.getDecayScale())),
+            physicalModels && hasPhysicalModel(type), resonance);
+        if (type == ToneType.RAIN_STICK || render.modeled) {
+            render.random = new Random(42); // Consistent seed for repeatability
+        }
+        render.chain = createChain(render);
+        if (render.chain != null) {
+            render.chainBuffer = new float[CHAIN_BLOCK];
+        }
+        if (render.resonant) {
+            render.convolver = new PartitionedConvolver(getRoomResponse());
+            render.convolverBlock = new float[PartitionedConvolver.BLOCK_SIZE];
+        }
+        PipelineStats.allocated(render.samples.length * 2L);
+        return render;
+    }
+    
+    /**
+     * Renders the next block of a tone, including fades and filtering.
+     * @param render Render state from {@link #newRender}
+     * @param frames Maximum number of samples to produce
+     */
+    public void renderNext(ToneRender render, int frames) {
+        int from = render.rendered;
+        int to = Math.min(render.samples.length, from + frames);
+        if (from >= to) {
+            return;
+        }
+        
+        PipelineStats.begin(PipelineStats.SECTION_RENDER);
+        long startNanos = PipelineStats.isEnabled() ? System.nanoTime() : 0;
+        long cpuStart = SessionStats.begin();
+        generateBlock(render, from, to);
+        if (render.chain != null) {
+            applyChain(render, from, to);
+        }
+        applyFades(render, from, to);
+        render.rendered = to;
+        
+        int previousReady = render.getReady();
+        int ready = to;
+        if (render.params.brightnessPercent != 0) {
+            applyBrightness(render, from, to);
+        }
+        if (render.convolver != null) {
+            ready = applyResonance(render, previousReady, to);
+        }
+        render.peaks.add(render.samples, previousReady, ready);
+        render.setReady(ready);
+        SessionStats.end(SessionStats.Stage.RENDER, cpuStart);
+        
+        if (startNanos != 0) {
+            PipelineStats.record(PipelineStats.Metric.RENDER_NS_PER_SAMPLE,
+                (System.nanoTime() - startNanos) / (to - from));
+        }
+        PipelineStats.end();
+    }
+    
+    /**
+     * Renders a tone variation to completion and caches it, unless the render is
+     * cancelled first.
+     * @return The samples, or null if the render was cancelled
+     */
+    public short[] render(ToneRender render) {
+        while (!render.isComplete()) {
+            if (render.isCancelled()) {
+                return null;
+            }
+            renderNext(render, RENDER_BLOCK);
+        }
+        store(render.getCacheKey(), render.samples, render.peaks.build());
+        return render.samples;
+    }
+    
+    /**
+     * Base duration in seconds of each tone; scaled by the decay setting.
+     */
+    private double getBaseDuration(ToneType type) {
         switch (type) {
             case ZEN_BOWL:
-                return generateZenBowl();
+                return 2.5;
             case CRYSTAL_CHIME:
-                return generateCrystalChime();
+                return 1.8;
             case TIBETAN_BOWL:
-                return generateTibetanBowl();
+                return 3.0;
             case TEMPLE_GONG:
-                return generateTempleGong();
+                return 3.5;
             case SOFT_PULSE:
-                return generateSoftPulse();
+                return 0.8;
             case AMBIENT_WAVE:
-                return generateAmbientWave();
+                return 2.0;
             case DIGITAL_CHIME:
-                return generateDigitalChime();
+                return 1.2;
             case AURORA:
-                return generateAurora();
+                return 2.5;
             case MARIMBA:
-                return generateMarimba();
+                return 1.5;
             case VIBRAPHONE:
-                return generateVibraphone();
+                return 2.5;
             case KALIMBA:
-                return generateKalimba();
+                return 2.0;
             case WIND_CHIMES:
-                return generateWindChimes();
+                return 2.2;
             case WATER_DROPLET:
-                return generateWaterDroplet();
+                return 0.8;
             case BAMBOO_KNOCK:
-                return generateBambooKnock();
+                return 0.6;
             case RAIN_STICK:
-                return generateRainStick();
+                return 2.0;
             case GENTLE_ALERT:
-                return generateGentleAlert();
+                return 0.6;
+            case SUCCESS_TONE:
+                return 0.8;
+            case SOFT_GONG:
+                return 2.5;
             case MINDFUL_BELL:
-                return generateMindfulBell();
+            default:
+                return 3.0;
+        }
+    }
+    
+    /**
+     * Generate raw samples [from, to) of the specified tone type.
+     */
+    private void generateBlock(ToneRender r, int from, int to) {
+        if (r.modeled) {
+            generateModeled(r, from, to);
+            return;
+        }
+        switch (r.type) {
+            case ZEN_BOWL:
+                generateZenBowl(r, from, to);
+                break;
+            case CRYSTAL_CHIME:
+                generateCrystalChime(r, from, to);
+                break;
+            case TIBETAN_BOWL:
+                generateTibetanBowl(r, from, to);
+                break;
+            case TEMPLE_GONG:
+                generateTempleGong(r, from, to);
+                break;
+            case SOFT_PULSE:
+                generateSoftPulse(r, from, to);
+                break;
+            case AMBIENT_WAVE:
+                generateAmbientWave(r, from, to);
+                break;
+            case DIGITAL_CHIME:
+                generateDigitalChime(r, from, to);
+                break;
+            case AURORA:
+                generateAurora(r, from, to);
+                break;
+            case MARIMBA:
+                generateMarimba(r, from, to);
+                break;
+            case VIBRAPHONE:
+                generateVibraphone(r, from, to);
+                break;
+            case KALIMBA:
+                generateKalimba(r, from, to);
+                break;
+            case WIND_CHIMES:
+                generateWindChimes(r, from, to);
+                break;
+            case WATER_DROPLET:
+                generateWaterDroplet(r, from, to);
+                break;
+            case BAMBOO_KNOCK:
+                generateBambooKnock(r, from, to);
+                break;
+            case RAIN_STICK:
+                generateRainStick(r, from, to);
+                break;
+            case GENTLE_ALERT:
+                generateGentleAlert(r, from, to);
+                break;
             case SUCCESS_TONE:
-                return generateSuccessTone();
+                generateSuccessTone(r, from, to);
+                break;
             case SOFT_GONG:
-                return generateSoftGong();
+                generateSoftGong(r, from, to);
+                break;
+            case MINDFUL_BELL:
             default:
-                return generateMindfulBell();
+                generateMindfulBell(r, from, to);
+                break;
         }
     }
     
     /**
      * Deep singing bowl with rich overtones - perfect for meditation
      */
-    private short[] generateZenBowl() {
-        double duration = 2.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateZenBowl(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 220.0; // A3
+        double baseFreq = 220.0 * r.pitch; // A3
         double[] harmonics = {1.0, 2.0, 3.0, 4.76, 6.28};
         double[] amplitudes = {1.0, 0.5, 0.25, 0.15, 0.08};
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getExponentialDecay(t, 0.01, 2.0);
+            double envelope = getExponentialDecay(t, 0.01, 2.0 * r.decay);
             
             double sample = 0;
             for (int h = 0; h < harmonics.length; h++) {
@@ -144,25 +1004,21 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.5);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Bright, sparkly crystal sound with high frequencies
      */
-    private short[] generateCrystalChime() {
-        double duration = 1.8;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateCrystalChime(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 1047.0; // C6
+        double baseFreq = 1047.0 * r.pitch; // C6
         double[] harmonics = {1.0, 2.0, 3.0, 4.0, 5.0};
         double[] amplitudes = {1.0, 0.6, 0.4, 0.25, 0.12};
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getExponentialDecay(t, 0.002, 1.2);
+            double envelope = getExponentialDecay(t, 0.002, 1.2 * r.decay);
             
             double sample = 0;
             for (int h = 0; h < harmonics.length; h++) {
@@ -174,31 +1030,27 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.45);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Rich resonant Tibetan bowl with complex overtones
      */
-    private short[] generateTibetanBowl() {
-        double duration = 3.0;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateTibetanBowl(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 174.61; // F3
+        double baseFreq = 174.61 * r.pitch; // F3
         // Tibetan bowls have non-harmonic partials
         double[] partials = {1.0, 2.71, 5.19, 8.44, 12.5};
         double[] amplitudes = {1.0, 0.7, 0.35, 0.18, 0.08};
         double[] decays = {2.5, 2.0, 1.5, 1.2, 0.9};
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
             
             double sample = 0;
             for (int p = 0; p < partials.length; p++) {
                 double freq = baseFreq * partials[p];
-                double env = getExponentialDecay(t, 0.015, decays[p]);
+                double env = getExponentialDecay(t, 0.015, decays[p] * r.decay);
                 // Add beating effect between partials
                 double beat = 1.0 + 0.02 * Math.sin(2.0 * Math.PI * (0.5 + p * 0.3) * t);
                 sample += amplitudes[p] * env * beat * Math.sin(2.0 * Math.PI * freq * t);
@@ -206,56 +1058,86 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.4);
         }
-        
-        return applyFades(samples);
     }
     
     /**
-     * Warm, expansive gong with long sustain
+     * Warm, expansive gong with long sustain.
+     * A struck plate rings with many inharmonic modes: a few strong low ones
+     * carry the pitch, and a dense cluster of weaker plate modes above gives
+     * the shimmer. Each mode is a slightly detuned pair, so it beats slowly,
+     * and higher modes die away faster. Far too many partials to sum per
+     * sample, so they are synthesized in the frequency domain.
      */
-    private short[] generateTempleGong() {
-        double duration = 3.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
-        
-        double baseFreq = 98.0; // G2
+    private void generateTempleGong(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        if (r.spectral == null) {
+            r.spectral = createGongSynth(r);
+        }
         
-        for (int i = 0; i < numSamples; i++) {
-            double t = (double) i / SAMPLE_RATE;
-            double envelope = getGongEnvelope(t, 0.02, 3.0);
-            
-            double sample = 0;
-            // Fundamental
-            sample += Math.sin(2.0 * Math.PI * baseFreq * t);
-            // Inharmonic overtones typical of gongs
-            sample += 0.5 * Math.sin(2.0 * Math.PI * baseFreq * 2.4 * t);
-            sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 3.8 * t);
-            sample += 0.2 * Math.sin(2.0 * Math.PI * baseFreq * 5.3 * t);
-            sample += 0.1 * Math.sin(2.0 * Math.PI * baseFreq * 7.1 * t);
-            
-            // Add complexity with slight frequency wobble
-            double wobble = 1.0 + 0.01 * Math.sin(2.0 * Math.PI * 2.5 * t);
-            sample *= envelope * wobble;
+        for (int i = from; i < to; i++) {
+            samples[i] = toShort(r.spectral.next() * 0.4);
+        }
+    }
+    
+    private SpectralSynth createGongSynth(ToneRender r) {
+        double baseFreq = 98.0 * r.pitch; // G2
+        double sustain = 3.0 * r.decay;
+        
+        // Strong low modes, then plate modes that crowd together upwards
+        double[] modes = {1.0, 2.4, 3.8, 5.3, 7.1};
+        double[] amplitudes = {1.0, 0.5, 0.3, 0.2, 0.1};
+        int plateModes = 60;
+        int count = (modes.length + plateModes) * 2;
+        double[] frequencies = new double[count];
+        double[] levels = new double[count];
+        double[] decays = new double[count];
+        double[] phases = new double[count];
+        
+        // Fixed seed: every render of a variation must come out the same
+        Random random = new Random(0x6f6e67L);
+        int p = 0;
+        for (int m = 0; m < modes.length + plateModes; m++) {
+            double ratio;
+            double amplitude;
+            if (m < modes.length) {
+                ratio = modes[m];
+                amplitude = amplitudes[m];
+            } else {
+                double n = m - modes.length + 1 + (random.nextDouble() - 0.5) * 0.8;
+                ratio = 1.5 + 0.25 * Math.pow(n, 1.3);
+                amplitude = 0.12 / Math.pow(ratio, 0.7) * (0.5 + random.nextDouble());
+            }
+            // On top of the overall decay; the fundamental only has that one
+            double decay = m == 0 ? Double.POSITIVE_INFINITY : 2.0 * sustain / Math.pow(ratio, 0.8);
+            // Struck modes start as sines, with the sign set by the strike point
+            double phase = random.nextBoolean() ? -Math.PI / 2 : Math.PI / 2;
+            double split = 0.002 + 0.002 * random.nextDouble();
             
-            samples[i] = toShort(sample * 0.35);
+            frequencies[p] = baseFreq * ratio;
+            levels[p] = amplitude * 0.75;
+            decays[p] = decay;
+            phases[p++] = phase;
+            frequencies[p] = baseFreq * ratio * (1.0 + split);
+            levels[p] = amplitude * 0.25;
+            decays[p] = decay;
+            phases[p++] = phase;
         }
         
-        return applyFades(samples);
+        return new SpectralSynth(frequencies, levels, decays, phases,
+            t -> getGongEnvelope(t, 0.02, sustain));
     }
     
     /**
      * Gentle electronic pulse - clean and modern
      */
-    private short[] generateSoftPulse() {
-        double duration = 0.8;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateSoftPulse(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 440.0; // A4
+        double baseFreq = 440.0 * r.pitch; // A4
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getSoftEnvelope(t, 0.05, 0.15, 0.5);
+            double envelope = getSoftEnvelope(t, 0.05, 0.15, 0.5 * r.decay);
             
             // Smooth, warm waveform using additive synthesis
             double sample = 0;
@@ -268,24 +1150,20 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.5);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Smooth synth pad - ambient and calming
      */
-    private short[] generateAmbientWave() {
-        double duration = 2.0;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateAmbientWave(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 261.63; // C4
-        double fifthFreq = 392.0; // G4
+        double baseFreq = 261.63 * r.pitch; // C4
+        double fifthFreq = 392.0 * r.pitch; // G4
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getPadEnvelope(t, 0.3, 1.5);
+            double envelope = getPadEnvelope(t, 0.3, 1.5 * r.decay);
             
             // Layered sine waves for pad-like sound
             double sample = 0;
@@ -302,22 +1180,18 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.35);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Clean modern chime - digital clarity
      */
-    private short[] generateDigitalChime() {
-        double duration = 1.2;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateDigitalChime(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
         // Major chord arpeggio effect
         double[] freqs = {523.25, 659.25, 783.99}; // C5, E5, G5
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
             
             double sample = 0;
@@ -325,32 +1199,29 @@ public class ToneSynthesizer {
                 double noteDelay = n * 0.03;
                 double noteT = t - noteDelay;
                 if (noteT > 0) {
-                    double noteEnv = getExponentialDecay(noteT, 0.005, 0.8);
-                    sample += noteEnv * Math.sin(2.0 * Math.PI * freqs[n] * noteT);
+                    double freq = freqs[n] * r.pitch;
+                    double noteEnv = getExponentialDecay(noteT, 0.005, 0.8 * r.decay);
+                    sample += noteEnv * Math.sin(2.0 * Math.PI * freq * noteT);
                     // Add subtle harmonic
-                    sample += noteEnv * 0.3 * Math.sin(2.0 * Math.PI * freqs[n] * 2 * noteT);
+                    sample += noteEnv * 0.3 * Math.sin(2.0 * Math.PI * freq * 2 * noteT);
                 }
             }
             
             samples[i] = toShort(sample * 0.4);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Ethereal, shimmering aurora sound
      */
-    private short[] generateAurora() {
-        double duration = 2.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateAurora(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 349.23; // F4
+        double baseFreq = 349.23 * r.pitch; // F4
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getPadEnvelope(t, 0.4, 2.0);
+            double envelope = getPadEnvelope(t, 0.4, 2.0 * r.decay);
             
             // Shimmering effect with detuned oscillators
             double sample = 0;
@@ -359,59 +1230,48 @@ public class ToneSynthesizer {
             sample += 0.6 * Math.sin(2.0 * Math.PI * baseFreq * 0.998 * t);
             sample += 0.5 * Math.sin(2.0 * Math.PI * baseFreq * 2.001 * t);
             sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 3 * t);
-            
-            // Slow filter sweep effect
-            double filterMod = 0.5 + 0.5 * Math.sin(2.0 * Math.PI * 0.3 * t);
-            sample *= envelope * (0.7 + 0.3 * filterMod);
+            sample *= envelope;
             
             samples[i] = toShort(sample * 0.3);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Warm wooden marimba tone
      */
-    private short[] generateMarimba() {
-        double duration = 1.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateMarimba(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 392.0; // G4
+        double baseFreq = 392.0 * r.pitch; // G4
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getPercussiveEnvelope(t, 0.003, 1.2);
+            double envelope = getPercussiveEnvelope(t, 0.003, 1.2 * r.decay);
             
             // Marimba has weak fundamental and strong 4th harmonic
             double sample = 0;
             sample += 0.7 * Math.sin(2.0 * Math.PI * baseFreq * t);
             sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 2 * t);
             sample += 0.15 * Math.sin(2.0 * Math.PI * baseFreq * 3 * t);
-            sample += 1.0 * Math.sin(2.0 * Math.PI * baseFreq * 4 * t) * Math.exp(-t * 5);
+            sample += 1.0 * Math.sin(2.0 * Math.PI * baseFreq * 4 * t) * Math.exp(-t * 5 / r.decay);
             
             sample *= envelope;
             
             samples[i] = toShort(sample * 0.45);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Metallic vibraphone with sustained tone
      */
-    private short[] generateVibraphone() {
-        double duration = 2.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateVibraphone(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 523.25; // C5
+        double baseFreq = 523.25 * r.pitch; // C5
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getExponentialDecay(t, 0.008, 2.0);
+            double envelope = getExponentialDecay(t, 0.008, 2.0 * r.decay);
             
             // Vibraphone tremolo
             double tremolo = 1.0 + 0.15 * Math.sin(2.0 * Math.PI * 5.5 * t);
@@ -426,60 +1286,52 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.45);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Plucky thumb piano (kalimba) tone
      */
-    private short[] generateKalimba() {
-        double duration = 2.0;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateKalimba(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 587.33; // D5
+        double baseFreq = 587.33 * r.pitch; // D5
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getKalimbaEnvelope(t, 0.001, 1.5);
+            double envelope = getKalimbaEnvelope(t, 0.001, 1.5 * r.decay);
             
             double sample = 0;
             // Kalimba has strong fundamental with quick high-frequency transient
             sample += Math.sin(2.0 * Math.PI * baseFreq * t);
-            sample += 0.5 * Math.sin(2.0 * Math.PI * baseFreq * 2 * t) * Math.exp(-t * 3);
-            sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 3 * t) * Math.exp(-t * 5);
-            sample += 0.2 * Math.sin(2.0 * Math.PI * baseFreq * 5 * t) * Math.exp(-t * 8);
+            sample += 0.5 * Math.sin(2.0 * Math.PI * baseFreq * 2 * t) * Math.exp(-t * 3 / r.decay);
+            sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 3 * t) * Math.exp(-t * 5 / r.decay);
+            sample += 0.2 * Math.sin(2.0 * Math.PI * baseFreq * 5 * t) * Math.exp(-t * 8 / r.decay);
             
             sample *= envelope;
             
             samples[i] = toShort(sample * 0.5);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Airy wind chimes with random-ish harmonics
      */
-    private short[] generateWindChimes() {
-        double duration = 2.2;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateWindChimes(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
         // Multiple chime frequencies
         double[] chimeFreqs = {880.0, 1108.73, 1318.51, 1567.98, 1760.0};
         double[] delays = {0.0, 0.08, 0.15, 0.22, 0.35};
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
             
             double sample = 0;
             for (int c = 0; c < chimeFreqs.length; c++) {
                 double chimeT = t - delays[c];
                 if (chimeT > 0) {
-                    double env = getExponentialDecay(chimeT, 0.002, 1.0 + c * 0.2);
-                    double freq = chimeFreqs[c];
+                    double env = getExponentialDecay(chimeT, 0.002, (1.0 + c * 0.2) * r.decay);
+                    double freq = chimeFreqs[c] * r.pitch;
                     sample += env * 0.6 * Math.sin(2.0 * Math.PI * freq * chimeT);
                     sample += env * 0.3 * Math.sin(2.0 * Math.PI * freq * 2 * chimeT);
                 }
@@ -487,24 +1339,20 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.35);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Pure, clear water droplet sound
      */
-    private short[] generateWaterDroplet() {
-        double duration = 0.8;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateWaterDroplet(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double startFreq = 2000.0;
-        double endFreq = 600.0;
+        double startFreq = 2000.0 * r.pitch;
+        double endFreq = 600.0 * r.pitch;
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getPercussiveEnvelope(t, 0.001, 0.5);
+            double envelope = getPercussiveEnvelope(t, 0.001, 0.5 * r.decay);
             
             // Pitch bend down like a water drop
             double freqT = t / 0.15;
@@ -521,29 +1369,111 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.5);
         }
-        
-        return applyFades(samples);
+    }
+    
+    /**
+     * Physical models of the plucked and struck tones. The excitation goes into
+     * one or two {@link Waveguide} loops, which ring and decay on their own.
+     */
+    private void generateModeled(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        if (r.waveguides == null) {
+            r.waveguides = createWaveguides(r);
+        }
+        Waveguide first = r.waveguides[0];
+        Waveguide second = r.waveguides[1];
+        Random random = r.random;
+        
+        switch (r.type) {
+            case KALIMBA: {
+                // Tine plucked with a soft noise burst two periods long
+                int burst = (int) (2 * SAMPLE_RATE / (587.33 * r.pitch));
+                for (int i = from; i < to; i++) {
+                    float input = 0f;
+                    if (i < burst) {
+                        // Smoothed noise: a flesh pluck, not a pick
+                        double shape = Math.sin(Math.PI * i / burst);
+                        r.pluckState += 0.35 * (random.nextDouble() * 2 - 1 - r.pluckState);
+                        input = (float) (shape * r.pluckState);
+                    }
+                    double sample = first.next(input) + 0.15 * second.next(input);
+                    samples[i] = toShort(sample * KALIMBA_MODEL_GAIN);
+                }
+                break;
+            }
+            case MARIMBA: {
+                // Felt mallet: a ~1.5ms half-sine push into the bar and its tuned overtone
+                int contact = SAMPLE_RATE * 3 / 2000;
+                for (int i = from; i < to; i++) {
+                    float input = i < contact ? (float) Math.sin(Math.PI * i / contact) * 0.24f : 0f;
+                    double sample = first.next(input) + 0.8 * second.next(input);
+                    samples[i] = toShort(sample * MARIMBA_MODEL_GAIN);
+                }
+                break;
+            }
+            case BAMBOO_KNOCK:
+            default: {
+                // Knock: a pulse half a period long, with the click of the stick on top
+                int contact = (int) (SAMPLE_RATE / (2 * 280.0 * r.pitch));
+                for (int i = from; i < to; i++) {
+                    double t = (double) i / SAMPLE_RATE;
+                    float input = i < contact ? (float) Math.sin(Math.PI * i / contact) * 0.3f : 0f;
+                    double sample = first.next(input) + 0.6 * second.next(input);
+                    if (t < 0.01) {
+                        sample += 0.1 * (1.0 - t / 0.01) * (random.nextDouble() * 2 - 1);
+                    }
+                    samples[i] = toShort(sample * BAMBOO_MODEL_GAIN);
+                }
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Waveguides of a modeled tone: the main mode and one partner mode.
+     */
+    private Waveguide[] createWaveguides(ToneRender r) {
+        switch (r.type) {
+            case KALIMBA:
+                // Metal tine: long ring, upper partials gone quickly; the octave
+                // guide gives the bright pluck
+                return new Waveguide[] {
+                    new Waveguide(587.33 * r.pitch, 1.5 * r.decay, 0.3),
+                    new Waveguide(587.33 * 2 * r.pitch, 0.15 * r.decay, 0.2)
+                };
+            case MARIMBA:
+                // Wooden bar: dull fundamental, and the overtone tuned two octaves up
+                return new Waveguide[] {
+                    new Waveguide(392.0 * r.pitch, 1.2 * r.decay, 0.45),
+                    new Waveguide(392.0 * 4 * r.pitch, 0.2 * r.decay, 0.3)
+                };
+            case BAMBOO_KNOCK:
+            default:
+                // Hollow tube: short ring with its inharmonic second mode
+                return new Waveguide[] {
+                    new Waveguide(280.0 * r.pitch, 0.4 * r.decay, 0.4),
+                    new Waveguide(280.0 * 2.76 * r.pitch, 0.1 * r.decay, 0.4)
+                };
+        }
     }
     
     /**
      * Hollow bamboo knock sound
      */
-    private short[] generateBambooKnock() {
-        double duration = 0.6;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateBambooKnock(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 280.0;
+        double baseFreq = 280.0 * r.pitch;
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getPercussiveEnvelope(t, 0.002, 0.4);
+            double envelope = getPercussiveEnvelope(t, 0.002, 0.4 * r.decay);
             
             // Hollow resonance with inharmonic partials
             double sample = 0;
             sample += Math.sin(2.0 * Math.PI * baseFreq * t);
-            sample += 0.6 * Math.sin(2.0 * Math.PI * baseFreq * 2.76 * t) * Math.exp(-t * 8);
-            sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 5.4 * t) * Math.exp(-t * 15);
+            sample += 0.6 * Math.sin(2.0 * Math.PI * baseFreq * 2.76 * t) * Math.exp(-t * 8 / r.decay);
+            sample += 0.3 * Math.sin(2.0 * Math.PI * baseFreq * 5.4 * t) * Math.exp(-t * 15 / r.decay);
             
             // Add click transient
             if (t < 0.01) {
@@ -554,23 +1484,18 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.55);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Gentle cascading rain stick effect
      */
-    private short[] generateRainStick() {
-        double duration = 2.0;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
-        
-        java.util.Random random = new java.util.Random(42); // Consistent seed for repeatability
+    private void generateRainStick(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        Random random = r.random;
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getSwellEnvelope(t, 0.3, 1.5);
+            double envelope = getSwellEnvelope(t, 0.3, 1.5 * r.decay);
             
             double sample = 0;
             
@@ -581,8 +1506,8 @@ public class ToneSynthesizer {
             for (int ping = 0; ping < 15; ping++) {
                 double pingT = t - (ping * 0.12 + 0.05);
                 if (pingT > 0 && pingT < 0.3) {
-                    double pingFreq = 1500 + ping * 200;
-                    double pingEnv = Math.exp(-pingT * 12);
+                    double pingFreq = (1500 + ping * 200) * r.pitch;
+                    double pingEnv = Math.exp(-pingT * 12 / r.decay);
                     sample += 0.2 * pingEnv * Math.sin(2.0 * Math.PI * pingFreq * pingT);
                 }
             }
@@ -592,58 +1517,51 @@ public class ToneSynthesizer {
             samples[i] = toShort(sample * 0.5);
         }
         
-        // Apply smoothing filter
-        return applySmoothing(applyFades(samples));
+        // Filtered by its chain in renderNext
     }
     
     /**
      * Soft attention-getting alert
      */
-    private short[] generateGentleAlert() {
-        double duration = 0.6;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateGentleAlert(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double freq1 = 698.46; // F5
-        double freq2 = 880.0;  // A5
+        double freq1 = 698.46 * r.pitch; // F5
+        double freq2 = 880.0 * r.pitch;  // A5
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
             
             double sample = 0;
             
             // Two-note gentle alert
-            if (t < 0.3) {
-                double env1 = getSoftEnvelope(t, 0.02, 0.1, 0.25);
+            if (t < 0.3 * r.decay) {
+                double env1 = getSoftEnvelope(t, 0.02, 0.1, 0.25 * r.decay);
                 sample += env1 * Math.sin(2.0 * Math.PI * freq1 * t);
                 sample += env1 * 0.3 * Math.sin(2.0 * Math.PI * freq1 * 2 * t);
             }
             if (t > 0.15) {
                 double t2 = t - 0.15;
-                double env2 = getSoftEnvelope(t2, 0.02, 0.1, 0.35);
+                double env2 = getSoftEnvelope(t2, 0.02, 0.1, 0.35 * r.decay);
                 sample += env2 * Math.sin(2.0 * Math.PI * freq2 * t2);
                 sample += env2 * 0.3 * Math.sin(2.0 * Math.PI * freq2 * 2 * t2);
             }
             
             samples[i] = toShort(sample * 0.45);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Classic meditation timer bell - clean and resonant
      */
-    private short[] generateMindfulBell() {
-        double duration = 3.0;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateMindfulBell(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 528.0; // "Solfeggio" frequency, C5-ish
+        double baseFreq = 528.0 * r.pitch; // "Solfeggio" frequency, C5-ish
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getExponentialDecay(t, 0.01, 2.5);
+            double envelope = getExponentialDecay(t, 0.01, 2.5 * r.decay);
             
             double sample = 0;
             // Pure, clear bell with minimal harmonics
@@ -659,30 +1577,26 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.5);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Pleasant success/confirmation tone
      */
-    private short[] generateSuccessTone() {
-        double duration = 0.8;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateSuccessTone(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
         // Ascending major third
-        double freq1 = 523.25; // C5
-        double freq2 = 659.25; // E5
+        double freq1 = 523.25 * r.pitch; // C5
+        double freq2 = 659.25 * r.pitch; // E5
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
             
             double sample = 0;
             
             // First note
-            if (t < 0.4) {
-                double env1 = getSoftEnvelope(t, 0.02, 0.15, 0.35);
+            if (t < 0.4 * r.decay) {
+                double env1 = getSoftEnvelope(t, 0.02, 0.15, 0.35 * r.decay);
                 sample += env1 * Math.sin(2.0 * Math.PI * freq1 * t);
                 sample += env1 * 0.4 * Math.sin(2.0 * Math.PI * freq1 * 2 * t);
             }
@@ -690,30 +1604,26 @@ public class ToneSynthesizer {
             // Second note (overlapping)
             if (t > 0.12) {
                 double t2 = t - 0.12;
-                double env2 = getSoftEnvelope(t2, 0.02, 0.15, 0.5);
+                double env2 = getSoftEnvelope(t2, 0.02, 0.15, 0.5 * r.decay);
                 sample += env2 * Math.sin(2.0 * Math.PI * freq2 * t2);
                 sample += env2 * 0.4 * Math.sin(2.0 * Math.PI * freq2 * 2 * t2);
             }
             
             samples[i] = toShort(sample * 0.45);
         }
-        
-        return applyFades(samples);
     }
     
     /**
      * Subtle soft gong - warm and non-intrusive
      */
-    private short[] generateSoftGong() {
-        double duration = 2.5;
-        int numSamples = (int) (SAMPLE_RATE * duration);
-        short[] samples = new short[numSamples];
+    private void generateSoftGong(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
         
-        double baseFreq = 130.81; // C3
+        double baseFreq = 130.81 * r.pitch; // C3
         
-        for (int i = 0; i < numSamples; i++) {
+        for (int i = from; i < to; i++) {
             double t = (double) i / SAMPLE_RATE;
-            double envelope = getGongEnvelope(t, 0.05, 2.0);
+            double envelope = getGongEnvelope(t, 0.05, 2.0 * r.decay);
             
             double sample = 0;
             sample += Math.sin(2.0 * Math.PI * baseFreq * t);
@@ -727,8 +1637,6 @@ public class ToneSynthesizer {
             
             samples[i] = toShort(sample * 0.4);
         }
-        
-        return applyFades(samples);
     }
     
     // ========================
@@ -821,99 +1729,194 @@ public class ToneSynthesizer {
         return (short) (sample * Short.MAX_VALUE * 0.9);
     }
     
-    private short[] applyFades(short[] samples) {
-        int fadeLength = Math.min(SAMPLE_RATE / 100, samples.length / 10); // 10ms or 10% of length
+    /**
+     * Filters and modulation run over a tone after its generator, or null for none.
+     */
+    private Dsp.Stage createChain(ToneRender r) {
+        switch (r.type) {
+            case AMBIENT_WAVE:
+                // The pad opens up slowly and breathes
+                return new Dsp.Chain(
+                    Dsp.Biquad.lowPass(450.0 * r.pitch, 1.2)
+                        .modulate(new Dsp.Lfo(0.2, -Math.PI / 2), 450.0 * r.pitch, 1600.0 * r.pitch),
+                    new Dsp.Gain(AMBIENT_WAVE_GAIN).modulate(new Dsp.Lfo(0.35, 0), 0.2));
+            case AURORA:
+                // Resonant low-pass sweeping over the detuned partials
+                return new Dsp.Chain(
+                    Dsp.Biquad.lowPass(700.0 * r.pitch, 2.0)
+                        .modulate(new Dsp.Lfo(0.3, 0), 700.0 * r.pitch, 2800.0 * r.pitch),
+                    new Dsp.Gain(AURORA_GAIN));
+            case RAIN_STICK:
+                // No rumble, and a wide band wandering over the rustle like falling beads
+                return new Dsp.Chain(
+                    Dsp.Biquad.highPass(300.0 * r.pitch, 0.7),
+                    Dsp.Biquad.bandPass(2000.0 * r.pitch, 0.6)
+                        .modulate(new Dsp.Lfo(0.6, 0), 2000.0 * r.pitch, 7000.0 * r.pitch),
+                    new Dsp.Gain(RAIN_STICK_GAIN));
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Runs the tone's chain over samples [from, to), one chain block at a time.
+     */
+    private void applyChain(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        float[] buffer = r.chainBuffer;
+        for (int start = from; start < to; start += buffer.length) {
+            int count = Math.min(buffer.length, to - start);
+            long startNanos = PipelineStats.isEnabled() ? System.nanoTime() : 0;
+            for (int i = 0; i < count; i++) {
+                buffer[i] = samples[start + i] / (float) Short.MAX_VALUE;
+            }
+            r.chain.process(buffer, 0, count);
+            for (int i = 0; i < count; i++) {
+                samples[start + i] = toShort(buffer[i] / 0.9);
+            }
+            if (startNanos != 0) {
+                // Scaled to a full block, so short blocks compare
+                PipelineStats.record(PipelineStats.Metric.DSP_NS_PER_BLOCK,
+                    (System.nanoTime() - startNanos) * CHAIN_BLOCK / count);
+            }
+        }
+    }
+    
+    /**
+     * Applies the 10ms fade-in/fade-out to samples [from, to).
+     */
+    private void applyFades(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        int fadeLength = r.fadeLength;
+        int fadeOutStart = samples.length - fadeLength;
         
         // Fade in
-        for (int i = 0; i < fadeLength; i++) {
+        for (int i = from; i < Math.min(to, fadeLength); i++) {
             double factor = (double) i / fadeLength;
             samples[i] = (short) (samples[i] * factor);
         }
         
         // Fade out
-        for (int i = 0; i < fadeLength; i++) {
-            double factor = (double) i / fadeLength;
-            int idx = samples.length - 1 - i;
+        for (int idx = Math.max(from, fadeOutStart); idx < to; idx++) {
+            double factor = (double) (samples.length - 1 - idx) / fadeLength;
             samples[idx] = (short) (samples[idx] * factor);
         }
-        
-        return samples;
     }
     
-    private short[] applySmoothing(short[] samples) {
-        short[] smoothed = new short[samples.length];
-        smoothed[0] = samples[0];
-        smoothed[samples.length - 1] = samples[samples.length - 1];
-        
-        for (int i = 1; i < samples.length - 1; i++) {
-            smoothed[i] = (short) ((samples[i - 1] + samples[i] * 2 + samples[i + 1]) / 4);
+    /**
+     * Tilts the spectrum around ~1.5 kHz: negative brightness blends towards a
+     * one-pole low-pass, positive brightness adds the high-passed residue.
+     */
+    private void applyBrightness(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        double amount = r.brightness;
+        double coefficient = 1.0 - Math.exp(-2.0 * Math.PI * 1500.0 / SAMPLE_RATE);
+        double state = r.toneFilterState;
+        
+        for (int i = from; i < to; i++) {
+            double x = samples[i] / (double) Short.MAX_VALUE;
+            state += coefficient * (x - state);
+            double y = x + amount * (x - state);
+            samples[i] = toShort(y / 0.9);
         }
-        
-        return smoothed;
+        r.toneFilterState = state;
     }
     
-    private void playAudioSamples(short[] samples) {
-        stopPlayback();
-        
-        int bufferSize = AudioTrack.getMinBufferSize(
-            SAMPLE_RATE,
-            CHANNEL_CONFIG,
-            AUDIO_FORMAT
-        );
-        
-        audioTrack = new AudioTrack.Builder()
-            .setAudioAttributes(new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .build())
-            .setAudioFormat(new AudioFormat.Builder()
-                .setSampleRate(SAMPLE_RATE)
-                .setEncoding(AUDIO_FORMAT)
-                .setChannelMask(CHANNEL_CONFIG)
-                .build())
-            .setBufferSizeInBytes(Math.max(bufferSize, samples.length * 2))
-            .setTransferMode(AudioTrack.MODE_STATIC)
-            .build();
-        
-        audioTrack.write(samples, 0, samples.length);
-        audioTrack.play();
-        isPlaying = true;
-        
-        // Set up completion listener to release resources
-        audioTrack.setNotificationMarkerPosition(samples.length);
-        audioTrack.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener() {
-            @Override
-            public void onMarkerReached(AudioTrack track) {
-                stopPlayback();
+    /**
+     * Adds the room to the filtered samples [from, to) in whole convolution
+     * blocks; the last block of the tone is padded with silence. The room tail
+     * is cut at the end of the tone, so it gets the same fade-out.
+     * @return Number of samples that are final
+     */
+    private int applyResonance(ToneRender r, int from, int to) {
+        short[] samples = r.samples;
+        float[] block = r.convolverBlock;
+        boolean last = to == samples.length;
+        int fadeOutStart = samples.length - r.fadeLength;
+        
+        while (to - from >= PartitionedConvolver.BLOCK_SIZE || (last && from < to)) {
+            int count = Math.min(PartitionedConvolver.BLOCK_SIZE, to - from);
+            for (int i = 0; i < count; i++) {
+                block[i] = samples[from + i] / (float) Short.MAX_VALUE;
             }
+            Arrays.fill(block, count, block.length, 0f);
+            r.convolver.process(block);
             
-            @Override
-            public void onPeriodicNotification(AudioTrack track) {}
-        });
+            for (int i = 0; i < count; i++) {
+                int idx = from + i;
+                double wet = block[i];
+                if (idx >= fadeOutStart) {
+                    wet *= (double) (samples.length - 1 - idx) / r.fadeLength;
+                }
+                double dry = samples[idx] / (double) Short.MAX_VALUE;
+                samples[idx] = toShort((dry * RESONANCE_DRY + wet * RESONANCE_WET) / 0.9);
+            }
+            from += count;
+        }
+        if (from == samples.length) {
+            // Done; the delay line is the bulk of a render's memory
+            r.convolver = null;
+        }
+        return from;
+    }
+    
+    private synchronized PartitionedConvolver.Response getRoomResponse() {
+        if (roomResponse == null) {
+            roomResponse = new PartitionedConvolver.Response(createRoomImpulse());
+        }
+        return roomResponse;
     }
     
     /**
-     * Stop any current playback and release resources.
+     * Synthetic small room: a handful of early reflections, then a diffuse
+     * tail of noise that builds up over 20ms, decays exponentially and gets
+     * darker as it dies away. Scaled to unit energy; the direct sound is the
+     * dry tone.
      */
-    public void stopPlayback() {
-        if (audioTrack != null) {
-            try {
-                if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
-                    audioTrack.stop();
-                }
-                audioTrack.release();
-            } catch (Exception e) {
-                // Ignore cleanup errors
-            }
-            audioTrack = null;
+    private float[] createRoomImpulse() {
+        int length = (int) (SAMPLE_RATE * ROOM_SECONDS);
+        float[] impulse = new float[length];
+        Random random = new Random(0x726f6f6dL);
+        
+        double[] reflectionsMs = {7.3, 11.9, 17.1, 23.7, 31.3};
+        for (double ms : reflectionsMs) {
+            double t = ms / 1000.0;
+            double sign = random.nextBoolean() ? 1.0 : -1.0;
+            impulse[(int) (t * SAMPLE_RATE)] += (float) (sign * 0.5 * Math.exp(-t / ROOM_DECAY));
+        }
+        
+        double state = 0;
+        for (int i = 0; i < length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            // Cutoff falls from ~8 kHz towards 1.5 kHz as high frequencies are absorbed
+            double cutoff = 1500.0 + 6500.0 * Math.exp(-t / 0.15);
+            double coefficient = 1.0 - Math.exp(-2.0 * Math.PI * cutoff / SAMPLE_RATE);
+            state += coefficient * (random.nextDouble() * 2.0 - 1.0 - state);
+            impulse[i] += (float) (0.1 * state * smoothstep(0, 0.02, t) * Math.exp(-t / ROOM_DECAY));
+        }
+        
+        double energy = 0;
+        for (float value : impulse) {
+            energy += value * value;
         }
-        isPlaying = false;
+        float scale = (float) (1.0 / Math.sqrt(energy));
+        for (int i = 0; i < length; i++) {
+            impulse[i] *= scale;
+        }
+        return impulse;
+    }
+    
+    /**
+     * Fade out any current playback.
+     */
+    public void stopPlayback() {
+        engine.stopAll();
     }
     
     /**
      * Release all resources.
      */
     public void release() {
-        stopPlayback();
+        engine.release();
     }
 }
@@ -0,0 +1,152 @@
+package com.intervalbell.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small waveform pictures of sounds for the tone picker.
+ * Each thumbnail is built on a background thread from the sound's
+ * {@link PeakPyramid}, one min/max pair per pixel column, and drawn into an
+ * alpha-only bitmap, which views tint. The main thread only looks up finished
+ * bitmaps.
+ */
+public class WaveformThumbnails {
+    private static final String TAG = "WaveformThumbnails";
+
+    // Roughly 30 thumbnails at xxhdpi
+    private static final int CACHE_BYTES = 1024 * 1024;
+
+    /**
+     * Loads the waveform to draw. Called on the background thread.
+     */
+    public interface PeakSource {
+        /**
+         * @return The waveform summary, or null if the sound is unavailable
+         */
+        PeakPyramid load();
+    }
+
+    /**
+     * Notified on the main thread when a requested thumbnail is ready.
+     */
+    public interface Listener {
+        void onThumbnailReady(String key);
+    }
+
+    private final int width;
+    private final int height;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "WaveformThumbnails"));
+    private final LruCache<String, Bitmap> cache = new LruCache<String, Bitmap>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    // Main thread only
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * @param width Thumbnail width in pixels
+     * @param height Thumbnail height in pixels
+     * @param listener Told when a requested thumbnail can be fetched with {@link #get}
+     */
+    public WaveformThumbnails(int width, int height, Listener listener) {
+        this.width = Math.max(1, width);
+        this.height = Math.max(1, height);
+        this.listener = listener;
+    }
+
+    /**
+     * Gets a finished thumbnail. Never blocks.
+     * @return The bitmap, or null if it has not been built yet
+     */
+    public Bitmap get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Builds a thumbnail in the background unless it is cached or already queued.
+     * Call from the main thread.
+     */
+    public void request(String key, PeakSource source) {
+        if (cache.get(key) != null || !pending.add(key)) {
+            return;
+        }
+        executor.execute(() -> {
+            Bitmap bitmap = null;
+            try {
+                PeakPyramid peaks = source.load();
+                if (peaks != null && peaks.getLength() > 0) {
+                    bitmap = render(peaks, width, height);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Cannot draw " + key, e);
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                pending.remove(key);
+                if (result != null) {
+                    cache.put(key, result);
+                    listener.onThumbnailReady(key);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops queued work. Thumbnails already built stay cached.
+     */
+    public void release() {
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Draws the min/max envelope of a sound, one vertical line per column,
+     * scaled so the loudest peak fills the height.
+     */
+    static Bitmap render(PeakPyramid peaks, int width, int height) {
+        short[] min = new short[width];
+        short[] max = new short[width];
+        peaks.getColumns(0, peaks.getLength(), width, min, max, null);
+        int peak = 1;
+        for (int x = 0; x < width; x++) {
+            peak = Math.max(peak, Math.max(-min[x], max[x]));
+        }
+        float center = height / 2f;
+        float scale = (height / 2f - 0.5f) / peak;
+
+        float[] lines = new float[width * 4];
+        for (int x = 0; x < width; x++) {
+            // At least one pixel tall so silence still shows as a line
+            lines[x * 4] = x + 0.5f;
+            lines[x * 4 + 1] = Math.min(center - max[x] * scale, center - 0.5f);
+            lines[x * 4 + 2] = x + 0.5f;
+            lines[x * 4 + 3] = Math.max(center - min[x] * scale, center + 0.5f);
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint();
+        paint.setStrokeWidth(1f);
+        new Canvas(bitmap).drawLines(lines, paint);
+        return bitmap;
+    }
+}
@@ -0,0 +1,68 @@
+package com.intervalbell.app;
+
+/**
+ * Digital waveguide for plucked and struck tones (extended Karplus-Strong).
+ * A delay line one period long is closed by a damping filter, which takes
+ * more from high partials than from low ones, and a first-order all-pass
+ * that tunes the loop to fractions of a sample. The excitation is fed in as
+ * input, so the same loop can be plucked with a noise burst or struck with a
+ * mallet pulse. Each sample costs a delay-line read, the filters and a write.
+ */
+public final class Waveguide {
+    private final float[] line;
+    private final float gain;
+    private final float current;
+    private final float previous;
+    private final float allpass;
+
+    private int position;
+    private float lastOut;
+    private float allpassIn;
+    private float allpassOut;
+
+    /**
+     * @param frequency Fundamental in Hz
+     * @param decaySeconds Time constant of the exponential decay of low partials
+     * @param damping Extra loss of high partials, from 0 (none) to 0.5
+     *                (two-point average, as in the original Karplus-Strong);
+     *                at high pitches it shortens the fundamental as well
+     */
+    public Waveguide(double frequency, double decaySeconds, double damping) {
+        double period = ToneSynthesizer.SAMPLE_RATE / frequency;
+        double omega = 2.0 * Math.PI / period;
+        // Phase delay of the damping filter at the fundamental; the all-pass
+        // makes up the rest, kept within 0.1..1.1 samples where it is well behaved
+        double dampingDelay = Math.atan2(damping * Math.sin(omega),
+            1.0 - damping + damping * Math.cos(omega)) / omega;
+        int length = Math.max(2, (int) Math.floor(period - dampingDelay - 0.1));
+        double fraction = period - dampingDelay - length;
+        line = new float[length];
+        // Exact phase delay at the fundamental, not just at low frequencies
+        allpass = (float) (Math.sin((1.0 - fraction) * omega / 2) / Math.sin((1.0 + fraction) * omega / 2));
+        gain = (float) Math.exp(-period / (ToneSynthesizer.SAMPLE_RATE * decaySeconds));
+        current = (float) (1.0 - damping);
+        previous = (float) damping;
+    }
+
+    /**
+     * Advances the loop by one sample.
+     * @param input Excitation added into the loop
+     * @return The output sample
+     */
+    public float next(float input) {
+        float out = line[position];
+        float damped = gain * (current * out + previous * lastOut);
+        lastOut = out;
+
+        float tuned = allpass * (damped - allpassOut) + allpassIn;
+        allpassIn = damped;
+        allpassOut = tuned;
+
+        float value = tuned + input;
+        line[position] = value;
+        if (++position == line.length) {
+            position = 0;
+        }
+        return value;
+    }
+}
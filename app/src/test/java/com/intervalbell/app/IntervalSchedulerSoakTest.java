@@ -0,0 +1,343 @@
+package com.intervalbell.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Soak test of {@link IntervalScheduler} on a {@link SimulatedClock}: each
+ * scenario runs hours to days of bells in well under a second, with GC pauses,
+ * slow renders, device sleep and Doze windows injected, and checks that no
+ * bell rings early, twice or off the grid.
+ *
+ * Every scenario also reports its bells rung and missed, the distribution of
+ * callback and onset lateness and the drift of lateness over the run. The
+ * report is written to {@code build/reports/soak/} as text, and as one
+ * tab-separated row per scenario for comparing releases; set the
+ * {@code soak.reportDir} system property to write it elsewhere.
+ */
+public class IntervalSchedulerSoakTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    // Main-thread cost of the callbacks themselves
+    private static final long PREPARE_COST_MS = 2;
+    private static final long BELL_COST_MS = 3;
+
+    // Share of the bells a day with Doze windows may miss
+    private static final double MAX_DOZE_MISSED_SHARE = 0.1;
+
+    // Lateness histogram bucket limits, in ms
+    private static final long[] BUCKETS = {1, 10, 100, SECOND, 10 * SECOND, MINUTE};
+
+    private static final StringBuilder report = new StringBuilder();
+    private static final StringBuilder table = new StringBuilder(
+        "scenario\tinterval_ms\thours\texpected\trung\tmissed\tpending"
+            + "\tlate_p50_ms\tlate_p99_ms\tlate_max_ms\tonset_p50_ms\tonset_p99_ms\tonset_max_ms"
+            + "\tdrift_ms_per_hour\tdispatches\tsuspensions\talarm_wakeups\n");
+
+    /**
+     * Render time of a bell on the audio thread, from when it is prepared.
+     */
+    private interface RenderModel {
+        long next(Random random);
+    }
+
+    /**
+     * One scheduler run: drives the scheduler as MainActivity does and keeps
+     * what happened to every bell.
+     */
+    private static final class Run implements IntervalScheduler.Listener {
+        final String name;
+        final SimulatedClock clock;
+        final RenderModel render;
+        final IntervalScheduler scheduler;
+        final long anchorMs;
+        final long intervalMs;
+        final long durationMs;
+
+        long[] deadlines = new long[1024];
+        long[] lateness = new long[1024];
+        long[] onsets = new long[1024];
+        int rung;
+        long missed;
+        long lastDeadlineMs = -1;
+        long renderReadyMs = -1;
+
+        Run(String name, SimulatedClock clock, RenderModel render, long intervalMs, long durationMs) {
+            this.name = name;
+            this.clock = clock;
+            this.render = render;
+            this.intervalMs = intervalMs;
+            this.durationMs = durationMs;
+            anchorMs = clock.now();
+            scheduler = new IntervalScheduler(clock, MainActivity.PREPARE_AHEAD_MS, this);
+        }
+
+        Run run() {
+            scheduler.start(anchorMs, intervalMs);
+            clock.runUntil(anchorMs + durationMs);
+            scheduler.stop();
+            return this;
+        }
+
+        @Override
+        public void onNextBell(long deadlineMs) {
+            assertEquals(name + ": deadline off the grid", 0, (deadlineMs - anchorMs) % intervalMs);
+            assertTrue(name + ": deadline not after the last one", deadlineMs > lastDeadlineMs);
+            long previous = lastDeadlineMs >= 0 ? lastDeadlineMs : anchorMs;
+            missed += (deadlineMs - previous) / intervalMs - 1;
+            lastDeadlineMs = deadlineMs;
+            renderReadyMs = -1;
+        }
+
+        @Override
+        public void onPrepare(long millisUntilBell) {
+            clock.busy(PREPARE_COST_MS);
+            renderReadyMs = clock.now() + render.next(clock.getRandom());
+            clock.acquireWakeLock(millisUntilBell + MainActivity.PRIME_MARGIN_MS);
+        }
+
+        @Override
+        public void onBell(long deadlineMs) {
+            long now = clock.now();
+            assertTrue(name + ": bell rung " + (deadlineMs - now) + " ms early", now >= deadlineMs);
+            assertEquals(name + ": bell for another deadline", lastDeadlineMs, deadlineMs);
+            assertTrue(name + ": bell rung twice", rung == 0 || deadlines[rung - 1] < deadlineMs);
+            // Heard once both the callback has run and the render has caught up
+            long onsetMs = Math.max(now, renderReadyMs >= 0 ? renderReadyMs : now + render.next(clock.getRandom()));
+            record(deadlineMs, now - deadlineMs, onsetMs - deadlineMs);
+            clock.busy(BELL_COST_MS);
+            clock.releaseWakeLock();
+        }
+
+        private void record(long deadlineMs, long lateMs, long onsetMs) {
+            if (rung == deadlines.length) {
+                deadlines = Arrays.copyOf(deadlines, rung * 2);
+                lateness = Arrays.copyOf(lateness, rung * 2);
+                onsets = Arrays.copyOf(onsets, rung * 2);
+            }
+            deadlines[rung] = deadlineMs;
+            lateness[rung] = lateMs;
+            onsets[rung] = onsetMs;
+            rung++;
+        }
+
+        /**
+         * @return Bells due within the run
+         */
+        long getExpected() {
+            return durationMs / intervalMs;
+        }
+
+        /**
+         * @return Bells due within the run that were neither rung nor skipped by the end
+         */
+        long getPending() {
+            return getExpected() - rung - missed;
+        }
+
+        long getMaxLateness() {
+            long max = 0;
+            for (int i = 0; i < rung; i++) {
+                max = Math.max(max, lateness[i]);
+            }
+            return max;
+        }
+
+        /**
+         * Least-squares slope of lateness over the time of the deadline.
+         * @return Change of lateness per hour of running, in ms
+         */
+        double getDriftMsPerHour() {
+            if (rung < 2) {
+                return 0;
+            }
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = 0; i < rung; i++) {
+                meanX += deadlines[i] - anchorMs;
+                meanY += lateness[i];
+            }
+            meanX /= rung;
+            meanY /= rung;
+            double covariance = 0;
+            double variance = 0;
+            for (int i = 0; i < rung; i++) {
+                double x = deadlines[i] - anchorMs - meanX;
+                covariance += x * (lateness[i] - meanY);
+                variance += x * x;
+            }
+            return variance > 0 ? covariance / variance * HOUR : 0;
+        }
+
+        void report() {
+            long[] late = Arrays.copyOf(lateness, rung);
+            long[] onset = Arrays.copyOf(onsets, rung);
+            Arrays.sort(late);
+            Arrays.sort(onset);
+
+            report.append(String.format(Locale.US,
+                "%s: every %s for %.1f h%n"
+                    + "  bells: %d due, %d rung, %d missed, %d pending at the end%n"
+                    + "  main thread: %d dispatches, %d GC pauses; device: %d suspensions, %d alarm wakeups, %.1f h asleep%n"
+                    + "  drift: %+.3f ms/h of lateness over the run%n",
+                name, formatMs(intervalMs), durationMs / (double) HOUR,
+                getExpected(), rung, missed, getPending(),
+                clock.dispatches, clock.gcPauses, clock.suspensions, clock.alarmWakeups, clock.sleptMs / (double) HOUR,
+                getDriftMsPerHour()));
+            appendDistribution("callback lateness", late);
+            appendDistribution("onset lateness", onset);
+            report.append('\n');
+
+            table.append(String.format(Locale.US, "%s\t%d\t%.1f\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%d\t%.3f\t%d\t%d\t%d%n",
+                name, intervalMs, durationMs / (double) HOUR, getExpected(), rung, missed, getPending(),
+                percentile(late, 0.5), percentile(late, 0.99), percentile(late, 1),
+                percentile(onset, 0.5), percentile(onset, 0.99), percentile(onset, 1),
+                getDriftMsPerHour(), clock.dispatches, clock.suspensions, clock.alarmWakeups));
+        }
+
+        private static void appendDistribution(String label, long[] sorted) {
+            report.append(String.format(Locale.US,
+                "  %s: p50 %d ms, p90 %d ms, p99 %d ms, p99.9 %d ms, max %d ms%n",
+                label, percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), percentile(sorted, 1)));
+            int[] counts = new int[BUCKETS.length + 1];
+            for (long value : sorted) {
+                int bucket = 0;
+                while (bucket < BUCKETS.length && value >= BUCKETS[bucket]) {
+                    bucket++;
+                }
+                counts[bucket]++;
+            }
+            for (int b = 0; b < counts.length; b++) {
+                String range = b == 0 ? "< " + formatMs(BUCKETS[0])
+                    : b == BUCKETS.length ? ">= " + formatMs(BUCKETS[b - 1])
+                    : formatMs(BUCKETS[b - 1]) + " - " + formatMs(BUCKETS[b]);
+                int bar = sorted.length > 0 ? (int) Math.ceil(40.0 * counts[b] / sorted.length) : 0;
+                report.append(String.format(Locale.US, "    %-14s %8d %s%n", range, counts[b],
+                    new String(new char[bar]).replace('\0', '#')));
+            }
+        }
+    }
+
+    @Test
+    public void idealClockRingsEveryBellOnTime() {
+        Run run = new Run("ideal", new SimulatedClock(1), random -> 0, MINUTE, 3 * DAY).run();
+        run.report();
+        assertEquals(run.getExpected(), run.rung);
+        assertEquals(0, run.missed);
+        assertEquals(0, run.getMaxLateness());
+    }
+
+    @Test
+    public void gcPausesAndSlowRendersDoNotDrift() {
+        SimulatedClock clock = new SimulatedClock(2).withGcPauses(0.05, 500);
+        // Usually well within the prepare time, now and then far beyond it
+        RenderModel render = random -> random.nextDouble() < 0.02
+            ? 2000 + random.nextInt(4000) : 50 + random.nextInt(350);
+        Run run = new Run("gc+slow-render", clock, render, 30 * SECOND, 3 * DAY).run();
+        run.report();
+        assertEquals(0, run.missed);
+        assertTrue("pending " + run.getPending(), run.getPending() <= 1);
+        // At most one pause per dispatch, plus the cost of the prepare callback
+        assertTrue("max lateness " + run.getMaxLateness(), run.getMaxLateness() <= 500 + PREPARE_COST_MS);
+        assertTrue("drift " + run.getDriftMsPerHour(), Math.abs(run.getDriftMsPerHour()) < 0.1);
+    }
+
+    @Test
+    public void shortIntervalsPrepareEveryBellAtOnce() {
+        // Shorter than the prepare time: each bell is prepared as soon as it is scheduled
+        SimulatedClock clock = new SimulatedClock(3).withGcPauses(0.05, 200);
+        Run run = new Run("short-interval", clock, random -> 20 + random.nextInt(80), SECOND, 2 * DAY).run();
+        run.report();
+        assertEquals(0, run.missed);
+        assertTrue("pending " + run.getPending(), run.getPending() <= 1);
+        assertTrue("drift " + run.getDriftMsPerHour(), Math.abs(run.getDriftMsPerHour()) < 0.1);
+    }
+
+    @Test
+    public void sleepWakesForEveryBellAndDozeMissesFew() {
+        // Short sleeps between bursts of activity, and a Doze window one sleep in twenty
+        SimulatedClock clock = new SimulatedClock(4)
+            .withGcPauses(0.02, 300)
+            .withSleep(20 * SECOND, 90 * SECOND, 0.05, 10 * MINUTE, 30 * MINUTE);
+        Run run = new Run("doze", clock, random -> 50 + random.nextInt(350), 5 * MINUTE, DAY).run();
+        run.report();
+        // The grid, ordering and no-early checks run on every callback
+        assertEquals(run.getExpected(), run.rung + run.missed + run.getPending());
+        // Outside Doze the alarm wakes the device for the bell, so most ring on time
+        assertEquals(0, percentile(sortedLateness(run), 0.5));
+        // In Doze the alarms are rate limited, and only bells due while one is held back are missed
+        assertTrue("missed " + run.missed + " of " + run.getExpected(),
+            run.missed <= run.getExpected() * MAX_DOZE_MISSED_SHARE);
+        // A bell waits on at most one held-back alarm, so none is later than the Doze alarm gap
+        assertTrue("max lateness " + run.getMaxLateness(),
+            run.getMaxLateness() <= SimulatedClock.DOZE_ALARM_GAP_MS);
+    }
+
+    @Test
+    public void earlyCallbacksWaitForTheDeadline() {
+        SimulatedClock clock = new SimulatedClock(5).withEarlyCallbacks(0.01);
+        Run run = new Run("early-callbacks", clock, random -> 100, 10 * SECOND, DAY).run();
+        run.report();
+        assertEquals(0, run.missed);
+        assertTrue("pending " + run.getPending(), run.getPending() <= 1);
+    }
+
+    private static long[] sortedLateness(Run run) {
+        long[] late = Arrays.copyOf(run.lateness, run.rung);
+        Arrays.sort(late);
+        return late;
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        File dir = new File(System.getProperty("soak.reportDir", "build/reports/soak"));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        write(new File(dir, "interval-scheduler.txt"), report);
+        write(new File(dir, "interval-scheduler.tsv"), table);
+        System.out.print(report);
+    }
+
+    private static void write(File file, CharSequence text) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.print(text);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String formatMs(long ms) {
+        if (ms >= MINUTE && ms % MINUTE == 0) {
+            return ms / MINUTE + " min";
+        }
+        if (ms >= SECOND && ms % SECOND == 0) {
+            return ms / SECOND + " s";
+        }
+        return ms + " ms";
+    }
+}
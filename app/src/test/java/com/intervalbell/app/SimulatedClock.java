@@ -0,0 +1,250 @@
+package com.intervalbell.app;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulated main looper and device for running {@link IntervalScheduler}
+ * through days of operation in a moment. Time only moves when the simulation
+ * moves it: to the next posted task, or by {@link #busy} for work done in a
+ * callback.
+ *
+ * Like a Handler, posted delays count awake time only. With sleep enabled the
+ * device suspends whenever no wake lock is held, for random periods and now
+ * and then for a long Doze window, and tasks due in between run when it wakes.
+ * Wakeups are alarms on elapsed time that wake the device, at most one per
+ * {@link #DOZE_ALARM_GAP_MS} during a Doze window, as the system allows for
+ * alarms that fire while idle; once no wake lock is held the device goes back
+ * to sleep for the rest of the window.
+ * Dispatches can be held up by GC pauses, and delays can come out early to
+ * check that nothing rings ahead of its deadline. All randomness comes from
+ * one seed, so a run is reproducible.
+ */
+final class SimulatedClock implements IntervalScheduler.Clock {
+    // Least time between alarms that wake the device during Doze
+    static final long DOZE_ALARM_GAP_MS = 9 * 60 * 1000;
+
+    private static final class Task {
+        final Runnable runnable;
+        // Uptime for posted tasks, elapsed time for alarms
+        final long dueMs;
+        final long order;
+
+        Task(Runnable runnable, long dueMs, long order) {
+            this.runnable = runnable;
+            this.dueMs = dueMs;
+            this.order = order;
+        }
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(SimulatedClock::compare);
+    private final PriorityQueue<Task> alarms = new PriorityQueue<>(SimulatedClock::compare);
+    private final Random random;
+
+    private long elapsedMs;
+    private long uptimeMs;
+    private long order;
+    private long wakeLockUntilMs;
+
+    // GC pauses before a dispatch
+    private double gcChance;
+    private long gcMaxMs;
+
+    // Suspend while no wake lock is held
+    private boolean sleeps;
+    private long awakeMeanMs;
+    private long sleepMeanMs;
+    private double dozeChance;
+    private long dozeMinMs;
+    private long dozeMaxMs;
+    private long nextSleepAtMs;
+    // End of the current sleep or Doze window, which an alarm only interrupts
+    private long sleepUntilMs;
+    private boolean dozing;
+    private long lastDozeAlarmMs = Long.MIN_VALUE / 2;
+
+    // Delays shortened by up to this share of themselves
+    private double earlyMaxFraction;
+
+    long dispatches;
+    long gcPauses;
+    long suspensions;
+    long sleptMs;
+    long alarmWakeups;
+
+    SimulatedClock(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Holds up a share of dispatches by a pause between 1 ms and the maximum, log-uniform.
+     */
+    SimulatedClock withGcPauses(double chance, long maxMs) {
+        gcChance = chance;
+        gcMaxMs = maxMs;
+        return this;
+    }
+
+    /**
+     * Suspends the device whenever no wake lock is held: awake and asleep for
+     * exponentially distributed times, with a share of the sleeps a Doze
+     * window of uniform length instead.
+     */
+    SimulatedClock withSleep(long awakeMeanMs, long sleepMeanMs, double dozeChance,
+            long dozeMinMs, long dozeMaxMs) {
+        sleeps = true;
+        this.awakeMeanMs = awakeMeanMs;
+        this.sleepMeanMs = sleepMeanMs;
+        this.dozeChance = dozeChance;
+        this.dozeMinMs = dozeMinMs;
+        this.dozeMaxMs = dozeMaxMs;
+        nextSleepAtMs = elapsedMs + exponential(awakeMeanMs);
+        return this;
+    }
+
+    /**
+     * Lets posted delays run early, by up to the given share of the delay.
+     */
+    SimulatedClock withEarlyCallbacks(double maxFraction) {
+        earlyMaxFraction = maxFraction;
+        return this;
+    }
+
+    @Override
+    public long now() {
+        return elapsedMs;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        long early = (long) (random.nextDouble() * earlyMaxFraction * delayMs);
+        queue.add(new Task(task, uptimeMs + Math.max(0, delayMs - early), order++));
+    }
+
+    @Override
+    public void scheduleWakeup(Runnable task, long delayMs) {
+        alarms.removeIf(queued -> queued.runnable == task);
+        alarms.add(new Task(task, elapsedMs + delayMs, order++));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        queue.removeIf(queued -> queued.runnable == task);
+        alarms.removeIf(queued -> queued.runnable == task);
+    }
+
+    /**
+     * Keeps the device awake for a while, like a wake lock acquired with a timeout.
+     */
+    void acquireWakeLock(long timeoutMs) {
+        wakeLockUntilMs = Math.max(wakeLockUntilMs, elapsedMs + timeoutMs);
+    }
+
+    void releaseWakeLock() {
+        wakeLockUntilMs = elapsedMs;
+    }
+
+    /**
+     * Spends time on the main thread, e.g. the work of a callback. The device
+     * stays awake while it runs.
+     */
+    void busy(long ms) {
+        elapsedMs += ms;
+        uptimeMs += ms;
+    }
+
+    Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Runs posted tasks and alarms in order until the given time, including
+     * tasks due at it.
+     */
+    void runUntil(long endMs) {
+        while (!queue.isEmpty() || !alarms.isEmpty()) {
+            Task task = advance(endMs);
+            if (task == null) {
+                break;
+            }
+            if (gcChance > 0 && random.nextDouble() < gcChance) {
+                gcPauses++;
+                busy((long) Math.exp(random.nextDouble() * Math.log(gcMaxMs)));
+            }
+            dispatches++;
+            task.runnable.run();
+        }
+        elapsedMs = Math.max(elapsedMs, endMs);
+    }
+
+    /**
+     * Moves time on to the next posted task or alarm, sleeping on the way as
+     * allowed, and takes it off its queue.
+     * @return The task, or null if the end time passed first
+     */
+    private Task advance(long endMs) {
+        while (true) {
+            Task posted = queue.peek();
+            Task alarm = alarms.peek();
+            if (sleepUntilMs > elapsedMs && wakeLockUntilMs <= elapsedMs) {
+                long wakeAt = sleepUntilMs;
+                if (alarm != null) {
+                    long alarmAt = dozing ? Math.max(alarm.dueMs, lastDozeAlarmMs + DOZE_ALARM_GAP_MS) : alarm.dueMs;
+                    if (alarmAt < wakeAt) {
+                        wakeAt = Math.max(elapsedMs, alarmAt);
+                    }
+                }
+                if (wakeAt > endMs) {
+                    sleptMs += endMs - elapsedMs;
+                    elapsedMs = endMs;
+                    return null;
+                }
+                sleptMs += wakeAt - elapsedMs;
+                elapsedMs = wakeAt;
+                if (wakeAt < sleepUntilMs) {
+                    alarmWakeups++;
+                    if (dozing) {
+                        lastDozeAlarmMs = elapsedMs;
+                    }
+                    return alarms.poll();
+                }
+                nextSleepAtMs = elapsedMs + exponential(awakeMeanMs);
+                continue;
+            }
+
+            long postedAt = posted != null ? elapsedMs + Math.max(0, posted.dueMs - uptimeMs) : Long.MAX_VALUE;
+            long alarmAt = alarm != null ? Math.max(elapsedMs, alarm.dueMs) : Long.MAX_VALUE;
+            long nextAt = Math.min(postedAt, alarmAt);
+            long sleepAt = sleeps ? Math.max(nextSleepAtMs, wakeLockUntilMs) : Long.MAX_VALUE;
+            if (nextAt <= sleepAt) {
+                if (nextAt > endMs) {
+                    busy(Math.max(0, endMs - elapsedMs));
+                    return null;
+                }
+                busy(nextAt - elapsedMs);
+                return postedAt <= alarmAt ? queue.poll() : alarms.poll();
+            }
+            busy(Math.max(0, sleepAt - elapsedMs));
+            if (elapsedMs > endMs) {
+                return null;
+            }
+            if (sleepUntilMs > elapsedMs) {
+                // Back to sleep for the rest of a window an alarm interrupted
+                continue;
+            }
+            dozing = random.nextDouble() < dozeChance;
+            sleepUntilMs = elapsedMs + (dozing
+                ? dozeMinMs + (long) (random.nextDouble() * (dozeMaxMs - dozeMinMs))
+                : exponential(sleepMeanMs));
+            suspensions++;
+        }
+    }
+
+    private static int compare(Task a, Task b) {
+        return a.dueMs != b.dueMs ? Long.compare(a.dueMs, b.dueMs) : Long.compare(a.order, b.order);
+    }
+
+    private long exponential(long meanMs) {
+        return (long) (-meanMs * Math.log(1.0 - random.nextDouble()));
+    }
+}
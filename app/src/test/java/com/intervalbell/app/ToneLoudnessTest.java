@@ -0,0 +1,43 @@
+package com.intervalbell.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks that custom recordings are normalized to the level of the built-in
+ * tones: every tone is rendered at its default settings and measured with the
+ * same gated RMS as a recording, and the median has to sit at
+ * {@link ToneSynthesizer#LOUDNESS_TARGET_DBFS}.
+ */
+public class ToneLoudnessTest {
+    // How far the median may sit from the target
+    private static final double MEDIAN_TOLERANCE_DB = 1.0;
+
+    // How far any one tone may sit from the median; the rain stick is a quiet rustle by design
+    private static final double SPREAD_DB = 15.0;
+
+    @Test
+    public void builtInTonesSitAtTheLoudnessTarget() {
+        ToneSynthesizer synth = new ToneSynthesizer();
+        ToneSynthesizer.ToneType[] types = ToneSynthesizer.ToneType.values();
+        double[] loudness = new double[types.length];
+        for (int t = 0; t < types.length; t++) {
+            short[] samples = synth.render(synth.newRender(types[t], ToneParams.DEFAULT));
+            loudness[t] = RecordingProcessor.measureLoudness(samples);
+        }
+
+        double[] sorted = loudness.clone();
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        assertEquals("median loudness of the built-in tones", ToneSynthesizer.LOUDNESS_TARGET_DBFS,
+            median, MEDIAN_TOLERANCE_DB);
+        for (int t = 0; t < types.length; t++) {
+            assertTrue(types[t] + " at " + loudness[t] + " dBFS, far from the others",
+                Math.abs(loudness[t] - median) <= SPREAD_DB);
+        }
+    }
+}